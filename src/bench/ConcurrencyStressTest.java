@@ -0,0 +1,116 @@
+package bench;
+
+import functions.DualFunction;
+import functions.Function;
+import parser.FunctionParser;
+import parser.FunctionParser.ParsedFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates shared ParsedFunction instances from many threads at once and compares
+ * every result bit for bit with a single-threaded reference. Covers each evaluation
+ * path: compiled bytecode, the tree interpreter, the exp4j fallback, parametric
+ * instances, derivatives, dual evaluation and text neither reader understands.
+ * Run with {@code java -cp out bench.ConcurrencyStressTest [threads] [rounds]}; exits with
+ * status 1 on the first mismatch.
+ */
+public class ConcurrencyStressTest {
+    private static final int POINTS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4 * Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        List<Function> functions = new ArrayList<>();
+        for (String expr : new String[]{"sin(3x) * x^2 - cos(x) / (1 + x^2)", "exp(-x^2) * log(x^2 + 1)", "floor(x) + sqrt(abs(x))"}) {
+            functions.add(FunctionParser.parse(expr));
+        }
+        FunctionParser.setCompilationEnabled(false);
+        functions.add(FunctionParser.parse("sin(3x) * x^2 - cos(x) / (1 + x^2)"));   // tree interpreter
+        FunctionParser.setCompilationEnabled(true);
+        functions.add(FunctionParser.parse("sin x + 1e-3*x"));                       // exp4j only
+        functions.add(FunctionParser.parse("max(x, 1)"));                            // unreadable: NaN
+        ParsedFunction parametric = (ParsedFunction) FunctionParser.parse("a*sin(b*x) + c");
+        functions.add(parametric.withParameters(Map.of("a", 2.0, "b", 0.5, "c", -1.0)));
+        functions.add(((ParsedFunction) functions.get(0)).derivative());
+
+        double[] xs = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) xs[i] = -50 + 100.0 * i / POINTS;
+        double[][] expected = new double[functions.size()][];
+        for (int f = 0; f < functions.size(); f++) expected[f] = evaluateAll(functions.get(f), xs);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            results.add(pool.submit(() -> {
+                go.await();
+                for (int r = 0; r < rounds; r++) {
+                    // Every thread walks the functions in a different order, so all are hit at once
+                    for (int k = 0; k < functions.size(); k++) {
+                        int f = (k + seed + r) % functions.size();
+                        double[] got = evaluateAll(functions.get(f), xs);
+                        int bad = mismatch(expected[f], got);
+                        if (bad >= 0) {
+                            return String.format("%s at x=%s: expected %s, got %s", functions.get(f).getExpression(),
+                                    xs[bad % POINTS], expected[f][bad], got[bad]);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        String failure = null;
+        for (Future<String> result : results) {
+            String r = result.get();
+            if (failure == null) failure = r;
+        }
+        pool.shutdown();
+        long evaluations = (long) threads * rounds * functions.size() * POINTS * 4;
+        System.out.printf("%d threads, %d evaluations in %.1f ms%n", threads, evaluations, (System.nanoTime() - start) / 1e6);
+        if (failure != null) {
+            System.out.println("FAIL: " + failure);
+            System.exit(1);
+        }
+        System.out.println("OK: results identical to the single-threaded reference");
+    }
+
+    // Scalar, batch and both halves of dual evaluation, laid end to end
+    private static double[] evaluateAll(Function f, double[] xs) {
+        int n = xs.length;
+        double[] out = new double[4 * n];
+        for (int i = 0; i < n; i++) out[i] = f.evaluate(xs[i]);
+        double[] batch = new double[n];
+        f.evaluate(xs, batch, 0, n);
+        System.arraycopy(batch, 0, out, n, n);
+        if (f instanceof DualFunction) {
+            double[] pair = new double[2];
+            for (int i = 0; i < n; i++) {
+                ((DualFunction) f).evaluateDual(xs[i], pair);
+                out[2 * n + i] = pair[0];
+                out[3 * n + i] = pair[1];
+            }
+        }
+        return out;
+    }
+
+    // Index of the first difference (NaN equals NaN), or -1
+    private static int mismatch(double[] expected, double[] got) {
+        if (Arrays.equals(expected, got)) return -1;
+        for (int i = 0; i < got.length; i++) {
+            if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(got[i])) return i;
+        }
+        return -1;
+    }
+}
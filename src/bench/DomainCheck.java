@@ -0,0 +1,108 @@
+package bench;
+
+import functions.Domain;
+import functions.DomainFunction;
+import functions.Function;
+import parser.FunctionParser;
+import solver.IntersectionEngine;
+import solver.IntersectionFinder;
+
+import java.util.Arrays;
+
+/**
+ * Checks the poles and jumps found in parsed expressions against their known positions,
+ * most of them off the integers, over ranges holding hundreds of thousands of them and
+ * ranges where the analyser falls back to sampling, and counts the intersections solved
+ * across them: a jump cut too narrowly or missed altogether shows up as an extra or
+ * missing intersection.
+ * Run with {@code java -cp out bench.DomainCheck}; exits with status 1 on the first failure.
+ */
+public class DomainCheck {
+    private static int failures;
+
+    public static void main(String[] args) {
+        // floor(x + 0.3) jumps at k - 0.3, step(x - 0.1) at 0.1, tan(x) has poles at pi/2 + k*pi
+        jumps("floor(x+0.3)", -10, 10, 1, 0.7);
+        jumps("floor(x+0.3)", -1000, 1000, 1, 0.7);
+        jumps("floor(x)", -1000, 1000, 1, 0);
+        jumps("step(x-0.1)", -10, 10, 100, 0.1);
+        jumps("floor(2x+0.25)", -300, 300, 0.5, 0.375);
+        jumps("floor(10x)", -1000, 1000, 0.1, 0);
+        jumps("floor(x)", -1e5, 1e5, 1, 0);
+        jumps("x % 0.7", 1, 5000, 0.7, 0);   // truncating %: continuous at 0, so left out
+        // Not affine, so searched: floor(x^2/100) jumps at +-10 sqrt(k), 200 of them within 100
+        jumpCount("floor(x^2/100)", -100, 100, 200);
+        jumpCount("floor(x^2/100)", -300, 300, 1800);
+        poles("tan(x)", -10, 10, Math.PI, Math.PI / 2);
+        poles("1/(x-0.37)", -50, 50, 100, 0.37);
+
+        intersections("floor(x+0.3)", "x-0.2", -10, 10, 20);
+        intersections("step(x-0.1)", "0.5", -10, 10, 0);
+        intersections("floor(x)", "x-0.5", -50, 50, 100);
+        intersections("floor(x)", "x-0.5", -1000, 1000, 2000);
+        intersections("tan(x)", "0", -10, 10, 7);
+
+        if (failures > 0) {
+            System.out.println("FAIL: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: all breaks and intersections as expected");
+    }
+
+    // Jumps of expr in [lo, hi] should be exactly the points offset + k * period
+    private static void jumps(String expr, double lo, double hi, double period, double offset) {
+        Domain d = domain(expr, lo, hi);
+        check(expr + " jumps on [" + lo + ", " + hi + "]", d.getJumps(), d.getTolerance(), lo, hi, period, offset);
+    }
+
+    private static void jumpCount(String expr, double lo, double hi, int expected) {
+        int found = domain(expr, lo, hi).getJumps().length;
+        String what = expr + " jumps on [" + lo + ", " + hi + "]";
+        if (found != expected) fail(what + ": expected " + expected + ", found " + found);
+        else System.out.println(what + ": " + found);
+    }
+
+    private static void poles(String expr, double lo, double hi, double period, double offset) {
+        Domain d = domain(expr, lo, hi);
+        check(expr + " poles on [" + lo + ", " + hi + "]", d.getPoles(), d.getTolerance(), lo, hi, period, offset);
+    }
+
+    private static Domain domain(String expr, double lo, double hi) {
+        return ((DomainFunction) FunctionParser.parse(expr)).domain(lo, hi);
+    }
+
+    private static void check(String what, double[] found, double tolerance, double lo, double hi,
+                              double period, double offset) {
+        double k0 = Math.ceil((lo - offset) / period), k1 = Math.floor((hi - offset) / period);
+        int expected = (int) (k1 - k0) + 1;
+        if (found.length != expected) {
+            fail(what + ": expected " + expected + ", found " + found.length);
+            return;
+        }
+        for (int i = 0; i < found.length; i++) {
+            double x = offset + (k0 + i) * period;
+            if (Math.abs(found[i] - x) > tolerance + Math.ulp(x)) {
+                fail(what + ": " + found[i] + " is not within " + tolerance + " of " + x);
+                return;
+            }
+        }
+        System.out.println(what + ": " + found.length + " " + Arrays.toString(Arrays.copyOf(found, Math.min(3, found.length))));
+    }
+
+    private static void intersections(String e1, String e2, double lo, double hi, int expected) {
+        Function f1 = FunctionParser.parse(e1), f2 = FunctionParser.parse(e2);
+        int pair = IntersectionFinder.findIntersections(f1, f2, lo, hi, 0.01).size();
+        int all = IntersectionEngine.findAll(Arrays.asList(f1, f2), lo, hi, 0.01).size();
+        String what = e1 + " and " + e2 + " on [" + lo + ", " + hi + "]";
+        if (pair != expected || all != expected) {
+            fail(what + ": expected " + expected + " intersections, finder " + pair + ", engine " + all);
+        } else {
+            System.out.println(what + ": " + expected + " intersections");
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAIL " + message);
+        failures++;
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import functions.*;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures time and heap allocation per evaluation of the closed-form function classes.
+ * Run with {@code java -cp out bench.EvaluationBenchmark [evaluations]}; exits with status 1
+ * if any of them allocates on the evaluation path after warm-up. A few hundred bytes per
+ * run come from the JIT swapping in compiled code, so only allocation that grows with
+ * the number of evaluations counts.
+ */
+public class EvaluationBenchmark {
+    private static volatile double sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("This JVM cannot report per-thread allocation");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Function[] functions = {
+                new TrigFunction("2sin(3x - 1)"),
+                new TrigFunction("tan(x)"),
+                new ExponentialFunction("0.5*2^(x - 1)"),
+                new ExponentialFunction("e^(-x)"),
+                new LogarithmicFunction("3*ln(2x + 1)"),
+                new LogarithmicFunction("log(x)"),
+                new StepFunction("floor(x)"),
+        };
+
+        boolean allocates = false;
+        long thread = Thread.currentThread().getId();
+        // What reading the counter costs by itself
+        long overhead = -threads.getThreadAllocatedBytes(thread) + threads.getThreadAllocatedBytes(thread);
+        double[] xs = new double[1024], out = new double[1024];
+        for (int i = 0; i < xs.length; i++) xs[i] = -10 + 20.0 * i / xs.length;
+
+        for (Function f : functions) {
+            run(f, n / 10);
+            long before = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            run(f, n);
+            long time = System.nanoTime() - start;
+            long single = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int r = 0; r < n / xs.length; r++) f.evaluate(xs, out, 0, xs.length);
+            long batch = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+            System.out.printf("%-18s %7.1f ns/eval  %.4f bytes/eval single  %.4f bytes/eval batch%n",
+                    f.getExpression(), (double) time / n, (double) Math.max(0, single) / n, (double) Math.max(0, batch) / n);
+            // Any per-call allocation is at least one 16-byte object per evaluation
+            if (single > n / 100 || batch > n / 100) allocates = true;
+        }
+        if (allocates) {
+            System.out.println("FAIL: evaluation allocates");
+            System.exit(1);
+        }
+        System.out.println("OK: no allocation on the evaluation path");
+    }
+
+    private static void run(Function f, int n) {
+        double s = 0;
+        for (int i = 0; i < n; i++) s += f.evaluate(-10 + (i & 1023) * (20.0 / 1024));
+        sink = s;
+    }
+}
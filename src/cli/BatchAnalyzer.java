@@ -0,0 +1,167 @@
+package cli;
+
+import functions.Function;
+import parser.FunctionParser;
+import parser.FunctionParser.ParsedFunction;
+import solver.Extremum;
+import solver.ExtremaFinder;
+import solver.InflectionFinder;
+import solver.IntegrationSolver;
+import solver.Intersection;
+import solver.IntersectionEngine;
+import solver.IntersectionFinder;
+import solver.ParallelScanner;
+import solver.Point;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyses a stream of input lines on a pool of worker threads. Each line holds one or
+ * more expressions separated by top-level commas, as typed into the plotter; blank lines
+ * and lines starting with # are skipped. Results are written in input order, and at most
+ * a few lines per worker are in flight at a time, so memory stays bounded however long
+ * the input is. A line that fails to parse or to analyse yields an error result and the
+ * batch carries on.
+ */
+public class BatchAnalyzer {
+    private static final int LINES_PER_WORKER = 4;
+    private static final Function ZERO = FunctionParser.parse("0");
+
+    private final double start;
+    private final double end;
+    private final double step;
+    private final int threads;
+    private final Map<String, Double> parameters;
+
+    public BatchAnalyzer(double start, double end, double step, int threads, Map<String, Double> parameters) {
+        if (!(end > start)) throw new IllegalArgumentException("range must not be empty");
+        if (!(step > 0)) throw new IllegalArgumentException("step must be positive");
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        this.start = start;
+        this.end = end;
+        this.step = step;
+        this.threads = threads;
+        this.parameters = new LinkedHashMap<>(parameters);
+    }
+
+    /** Analyses every line of in and writes the results to out; returns the number of lines analysed. */
+    public long run(BufferedReader in, Writer out, ResultFormat format) throws IOException {
+        // The workers are the parallelism; scans inside one line run on its worker
+        int scanThreads = ParallelScanner.getParallelism();
+        if (threads > 1) ParallelScanner.setParallelism(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<BatchResult>> inFlight = new ArrayDeque<>();
+        long lines = 0, analysed = 0;
+        try {
+            format.writeHeader(out);
+            String text;
+            while ((text = in.readLine()) != null) {
+                long line = ++lines;
+                String input = text.trim();
+                if (input.isEmpty() || input.startsWith("#")) continue;
+                if (inFlight.size() >= threads * LINES_PER_WORKER) format.write(next(inFlight), out);
+                inFlight.add(pool.submit(() -> analyze(line, input)));
+                analysed++;
+            }
+            while (!inFlight.isEmpty()) format.write(next(inFlight), out);
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+            if (threads > 1) ParallelScanner.setParallelism(scanThreads);
+        }
+        return analysed;
+    }
+
+    private static BatchResult next(Deque<Future<BatchResult>> inFlight) throws IOException {
+        try {
+            return inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            // analyze() turns failures into results, so only errors get here
+            throw new IOException("analysis failed", e.getCause());
+        }
+    }
+
+    /** Analyses one line; never throws for bad input. */
+    public BatchResult analyze(long line, String input) {
+        List<Function> functions = new ArrayList<>();
+        List<String> expressions = split(input);
+        try {
+            for (String expr : expressions) {
+                Function f = FunctionParser.parse(expr);
+                if (f instanceof ParsedFunction) {
+                    ParsedFunction parsed = (ParsedFunction) f;
+                    if (!parsed.isReadable()) return BatchResult.failed(line, input, start, end, "failed to parse: " + expr);
+                    f = parsed.withParameters(parameters);
+                }
+                functions.add(f);
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            return BatchResult.failed(line, input, start, end, "failed to parse: " + message(e));
+        }
+        try {
+            List<BatchResult.FunctionResult> results = new ArrayList<>(functions.size());
+            for (int i = 0; i < functions.size(); i++) {
+                results.add(analyze(expressions.get(i), functions.get(i)));
+            }
+            List<Intersection> intersections = functions.size() > 1
+                    ? IntersectionEngine.findAll(functions, start, end, step) : Collections.emptyList();
+            return new BatchResult(line, input, start, end, results, intersections);
+        } catch (RuntimeException | StackOverflowError e) {
+            // A stack overflow unwinds only this line's analysis; the worker carries on
+            return BatchResult.failed(line, input, start, end, "failed to analyse: " + message(e));
+        }
+    }
+
+    private BatchResult.FunctionResult analyze(String expression, Function f) {
+        List<Point> roots = IntersectionFinder.findIntersections(f, ZERO, start, end, step);
+        List<Extremum> extrema = ExtremaFinder.findExtrema(f, start, end, step);
+        List<Point> inflections = new ArrayList<>();
+        for (double x : InflectionFinder.findInflectionPoints(f, start, end, step)) {
+            inflections.add(new Point(x, f.evaluate(x)));
+        }
+        return new BatchResult.FunctionResult(expression, roots, extrema, inflections,
+                IntegrationSolver.gaussKronrod(f, start, end));
+    }
+
+    // Commas inside parentheses belong to a call such as pow(x, 2)
+    static List<String> split(String input) {
+        List<String> out = new ArrayList<>();
+        int depth = 0, from = 0;
+        for (int i = 0; i <= input.length(); i++) {
+            char c = i < input.length() ? input.charAt(i) : ',';
+            if (c == '(') depth++;
+            else if (c == ')') depth = Math.max(0, depth - 1);
+            else if (c == ',' && (depth == 0 || i == input.length())) {
+                String expr = input.substring(from, i).trim();
+                if (!expr.isEmpty()) out.add(expr);
+                from = i + 1;
+            }
+        }
+        return out;
+    }
+
+    private static String message(Throwable e) {
+        if (e instanceof StackOverflowError) return "expression nested too deeply";
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
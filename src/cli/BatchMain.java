@@ -0,0 +1,89 @@
+package cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Headless entry point: reads expressions from a file or stdin and writes what
+ * {@link BatchAnalyzer} finds to a file or stdout. Never touches AWT.
+ *
+ * <pre>
+ * java -cp ... cli.BatchMain [--input FILE] [--output FILE] [--format jsonl|csv]
+ *     [--range LO,HI] [--step STEP] [--threads N] [--param NAME=VALUE]...
+ * </pre>
+ */
+public class BatchMain {
+    private static final String USAGE = "usage: cli.BatchMain [--input FILE] [--output FILE] [--format jsonl|csv]"
+            + " [--range LO,HI] [--step STEP] [--threads N] [--param NAME=VALUE]...";
+
+    public static void main(String[] args) {
+        String input = "-", output = "-";
+        ResultFormat format = ResultFormat.JSONL;
+        double start = -10, end = 10, step = 0.01;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Map<String, Double> parameters = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--help") || arg.equals("-h")) {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--input": input = value; break;
+                    case "--output": output = value; break;
+                    case "--format": format = ResultFormat.parse(value); break;
+                    case "--step": step = Double.parseDouble(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--range": {
+                        String[] bounds = value.split(",");
+                        if (bounds.length != 2) throw new IllegalArgumentException("--range takes LO,HI");
+                        start = Double.parseDouble(bounds[0].trim());
+                        end = Double.parseDouble(bounds[1].trim());
+                        break;
+                    }
+                    case "--param": {
+                        int eq = value.indexOf('=');
+                        if (eq <= 0) throw new IllegalArgumentException("--param takes NAME=VALUE");
+                        parameters.put(value.substring(0, eq).trim(), Double.parseDouble(value.substring(eq + 1).trim()));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try (BufferedReader in = input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+             Writer out = output.equals("-")
+                     ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                     : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            long lines = new BatchAnalyzer(start, end, step, threads, parameters).run(in, out, format);
+            System.err.println("analysed " + lines + " lines");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("batch failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
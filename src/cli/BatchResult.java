@@ -0,0 +1,64 @@
+package cli;
+
+import solver.Extremum;
+import solver.Integral;
+import solver.Intersection;
+import solver.Point;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything found for one input line: per expression its roots, extrema, inflection
+ * points and integral over the range, plus the intersections between the line's
+ * expressions. A line that could not be analysed carries only its error.
+ */
+public final class BatchResult {
+    /** Findings for one expression of the line. */
+    public static final class FunctionResult {
+        public final String expression;
+        public final List<Point> roots;
+        public final List<Extremum> extrema;
+        public final List<Point> inflections;
+        public final Integral integral;
+
+        FunctionResult(String expression, List<Point> roots, List<Extremum> extrema, List<Point> inflections,
+                       Integral integral) {
+            this.expression = expression;
+            this.roots = roots;
+            this.extrema = extrema;
+            this.inflections = inflections;
+            this.integral = integral;
+        }
+    }
+
+    /** 1-based position of the line in the input. */
+    public final long line;
+    public final String input;
+    public final double start;
+    public final double end;
+    public final List<FunctionResult> functions;
+    public final List<Intersection> intersections;
+    /** Why the line could not be analysed, or null. */
+    public final String error;
+
+    BatchResult(long line, String input, double start, double end, List<FunctionResult> functions,
+                List<Intersection> intersections) {
+        this(line, input, start, end, functions, intersections, null);
+    }
+
+    private BatchResult(long line, String input, double start, double end, List<FunctionResult> functions,
+                        List<Intersection> intersections, String error) {
+        this.line = line;
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.functions = functions;
+        this.intersections = intersections;
+        this.error = error;
+    }
+
+    static BatchResult failed(long line, String input, double start, double end, String error) {
+        return new BatchResult(line, input, start, end, Collections.emptyList(), Collections.emptyList(), error);
+    }
+}
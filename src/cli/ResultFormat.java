@@ -0,0 +1,157 @@
+package cli;
+
+import solver.Extremum;
+import solver.Integral;
+import solver.Intersection;
+import solver.Point;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How results are written: one JSON object per input line, or CSV with one row per
+ * finding. Non-finite numbers come out as null in JSON and as empty fields in CSV.
+ */
+public enum ResultFormat {
+    JSONL {
+        @Override
+        void writeHeader(Appendable out) {
+        }
+
+        @Override
+        void write(BatchResult r, Appendable out) throws IOException {
+            out.append("{\"line\":").append(Long.toString(r.line))
+                    .append(",\"input\":").append(json(r.input))
+                    .append(",\"range\":[").append(number(r.start)).append(',').append(number(r.end)).append(']');
+            if (r.error != null) {
+                out.append(",\"error\":").append(json(r.error)).append("}\n");
+                return;
+            }
+            out.append(",\"functions\":[");
+            for (int i = 0; i < r.functions.size(); i++) {
+                BatchResult.FunctionResult f = r.functions.get(i);
+                if (i > 0) out.append(',');
+                out.append("{\"expression\":").append(json(f.expression)).append(",\"roots\":");
+                points(f.roots, out);
+                out.append(",\"extrema\":[");
+                for (int j = 0; j < f.extrema.size(); j++) {
+                    Extremum e = f.extrema.get(j);
+                    if (j > 0) out.append(',');
+                    out.append("{\"x\":").append(number(e.x)).append(",\"y\":").append(number(e.y))
+                            .append(",\"type\":").append(json(kind(e.type))).append('}');
+                }
+                out.append("],\"inflections\":");
+                points(f.inflections, out);
+                Integral integral = f.integral;
+                out.append(",\"integral\":{\"value\":").append(number(integral.value))
+                        .append(",\"error\":").append(number(integral.error))
+                        .append(",\"converged\":").append(Boolean.toString(integral.converged)).append("}}");
+            }
+            out.append("],\"intersections\":[");
+            for (int i = 0; i < r.intersections.size(); i++) {
+                Intersection p = r.intersections.get(i);
+                if (i > 0) out.append(',');
+                out.append("{\"x\":").append(number(p.x)).append(",\"y\":").append(number(p.y))
+                        .append(",\"first\":").append(Integer.toString(p.firstIndex))
+                        .append(",\"second\":").append(Integer.toString(p.secondIndex)).append('}');
+            }
+            out.append("]}\n");
+        }
+
+        private void points(List<Point> points, Appendable out) throws IOException {
+            out.append('[');
+            for (int i = 0; i < points.size(); i++) {
+                if (i > 0) out.append(',');
+                out.append("{\"x\":").append(number(points.get(i).x))
+                        .append(",\"y\":").append(number(points.get(i).y)).append('}');
+            }
+            out.append(']');
+        }
+    },
+
+    /** Columns: line, kind, expression, other, x, y, value, estimate, message. */
+    CSV {
+        @Override
+        void writeHeader(Appendable out) throws IOException {
+            out.append("line,kind,expression,other,x,y,value,estimate,message\n");
+        }
+
+        @Override
+        void write(BatchResult r, Appendable out) throws IOException {
+            if (r.error != null) {
+                row(out, r.line, "error", r.input, "", Double.NaN, Double.NaN, Double.NaN, Double.NaN, r.error);
+                return;
+            }
+            for (BatchResult.FunctionResult f : r.functions) {
+                for (Point p : f.roots) row(out, r.line, "root", f.expression, "", p.x, p.y, Double.NaN, Double.NaN, "");
+                for (Extremum e : f.extrema) {
+                    row(out, r.line, kind(e.type), f.expression, "", e.x, e.y, Double.NaN, e.precision, "");
+                }
+                for (Point p : f.inflections) {
+                    row(out, r.line, "inflection", f.expression, "", p.x, p.y, Double.NaN, Double.NaN, "");
+                }
+                Integral i = f.integral;
+                row(out, r.line, "integral", f.expression, "", r.start, r.end, i.value, i.error,
+                        i.converged ? "" : "not converged");
+            }
+            for (Intersection p : r.intersections) {
+                row(out, r.line, "intersection", r.functions.get(p.firstIndex).expression,
+                        r.functions.get(p.secondIndex).expression, p.x, p.y, Double.NaN, Double.NaN, "");
+            }
+        }
+
+        private void row(Appendable out, long line, String kind, String expression, String other,
+                         double x, double y, double value, double estimate, String message) throws IOException {
+            out.append(Long.toString(line)).append(',').append(kind)
+                    .append(',').append(field(expression)).append(',').append(field(other))
+                    .append(',').append(cell(x)).append(',').append(cell(y))
+                    .append(',').append(cell(value)).append(',').append(cell(estimate))
+                    .append(',').append(field(message)).append('\n');
+        }
+
+        private String cell(double v) {
+            return Double.isFinite(v) ? Double.toString(v) : "";
+        }
+
+        private String field(String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) return s;
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+    };
+
+    /** Written once before the first result; nothing for formats without a header. */
+    abstract void writeHeader(Appendable out) throws IOException;
+
+    abstract void write(BatchResult result, Appendable out) throws IOException;
+
+    public static ResultFormat parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static String kind(Extremum.Type type) {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String number(double v) {
+        return Double.isFinite(v) ? Double.toString(v) : "null";
+    }
+
+    private static String json(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
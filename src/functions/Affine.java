@@ -0,0 +1,53 @@
+package functions;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The pieces of the closed forms understood by the elementary function classes: a
+ * leading coefficient ("2", "-", "0.5*") and an argument of the form scale * x + shift
+ * ("x", "3x-1", "(2*x + 0.5)", "-x"). Parsed once at construction; evaluation only
+ * does the arithmetic.
+ */
+final class Affine {
+    static final String NUMBER = "(?:\\d+(?:\\.\\d*)?|\\.\\d+)(?:e[+-]?\\d+)?";
+    // Optional sign and number, then an optional "*"; an empty match means 1
+    static final String COEFFICIENT = "([+-]?(?:" + NUMBER + ")?)\\*?";
+
+    private static final Pattern ARGUMENT = Pattern.compile(
+            "([+-]?(?:" + NUMBER + ")?)\\*?x([+-]" + NUMBER + ")?|([+-]?" + NUMBER + ")");
+
+    final double scale;
+    final double shift;
+
+    private Affine(double scale, double shift) {
+        this.scale = scale;
+        this.shift = shift;
+    }
+
+    /** Lower-cases and removes whitespace, the form the patterns are written against. */
+    static String normalize(String expression) {
+        return expression.toLowerCase().replaceAll("\\s+", "");
+    }
+
+    /** A leading coefficient captured by {@link #COEFFICIENT}. */
+    static double coefficient(String s) {
+        if (s == null || s.isEmpty() || s.equals("+")) return 1;
+        if (s.equals("-")) return -1;
+        return Double.parseDouble(s);
+    }
+
+    /** Parses an argument with or without surrounding parentheses; null if it is not affine in x. */
+    static Affine argument(String s) {
+        if (s.length() >= 2 && s.charAt(0) == '(' && s.charAt(s.length() - 1) == ')')
+            s = s.substring(1, s.length() - 1);
+        Matcher m = ARGUMENT.matcher(s);
+        if (!m.matches()) return null;
+        if (m.group(3) != null) return new Affine(0, Double.parseDouble(m.group(3)));
+        return new Affine(coefficient(m.group(1)), m.group(2) != null ? Double.parseDouble(m.group(2)) : 0);
+    }
+
+    static IllegalArgumentException unsupported(String kind, String expression) {
+        return new IllegalArgumentException("Unsupported " + kind + " expression: " + expression);
+    }
+}
@@ -0,0 +1,7 @@
+package functions;
+
+/** A function that knows its exact derivative. */
+public interface Differentiable extends Function {
+    /** f' as an ordinary Function, or null when this instance has no exact form for it. */
+    Function derivative();
+}
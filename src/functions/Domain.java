@@ -0,0 +1,202 @@
+package functions;
+
+import java.util.Arrays;
+
+/**
+ * Where a function is defined within some range [lo, hi], and where it breaks: the
+ * intervals on which it is finite and continuous apart from the listed points, its
+ * poles (vertical asymptotes) and its jump discontinuities. Interval ends are
+ * reported as plain numbers; whether an end point itself belongs to the domain is
+ * left to evaluation. Breaks located numerically carry a tolerance: the true pole or
+ * jump lies within that distance of the reported one.
+ */
+public final class Domain {
+    private static final double[] NONE = new double[0];
+    private static final int MAX_LATTICE = 1 << 20;
+
+    private final double lo, hi;
+    private final double[] intervals;   // start0, end0, start1, end1, ... sorted and disjoint
+    private final double[] poles;
+    private final double[] jumps;
+    private final double tolerance;
+
+    public Domain(double lo, double hi, double[] intervals, double[] poles, double[] jumps) {
+        this(lo, hi, intervals, poles, jumps, 0);
+    }
+
+    public Domain(double lo, double hi, double[] intervals, double[] poles, double[] jumps, double tolerance) {
+        if ((intervals.length & 1) != 0) throw new IllegalArgumentException("intervals must come in pairs");
+        this.lo = lo;
+        this.hi = hi;
+        this.intervals = intervals.clone();
+        this.poles = sorted(poles);
+        this.jumps = sorted(jumps);
+        this.tolerance = tolerance;
+    }
+
+    /** Defined and continuous on the whole of [lo, hi]. */
+    public static Domain everywhere(double lo, double hi) {
+        return new Domain(lo, hi, new double[]{lo, hi}, NONE, NONE);
+    }
+
+    // [lo, hi] cut at every pole and jump, all of them within [lo, hi]
+    static Domain split(double lo, double hi, double[] poles, double[] jumps) {
+        double[] breaks = new double[poles.length + jumps.length];
+        System.arraycopy(poles, 0, breaks, 0, poles.length);
+        System.arraycopy(jumps, 0, breaks, poles.length, jumps.length);
+        Arrays.sort(breaks);
+        double[] intervals = new double[2 * breaks.length + 2];
+        int n = 0;
+        double start = lo;
+        for (double b : breaks) {
+            if (b > start) {
+                intervals[n++] = start;
+                intervals[n++] = b;
+            }
+            start = b;
+        }
+        if (hi > start) {
+            intervals[n++] = start;
+            intervals[n++] = hi;
+        }
+        return new Domain(lo, hi, Arrays.copyOf(intervals, n), poles, jumps);
+    }
+
+    /**
+     * x = (offset + k * period) / scale for every integer k that lands within [lo, hi]: the
+     * breaks of a periodic function of scale * x. None when there would be more than about
+     * a million.
+     */
+    public static double[] lattice(double lo, double hi, double scale, double offset, double period) {
+        double u0 = Math.min(scale * lo, scale * hi) - offset, u1 = Math.max(scale * lo, scale * hi) - offset;
+        double k0 = Math.ceil(u0 / period), k1 = Math.floor(u1 / period);
+        if (!(k1 >= k0) || k1 - k0 >= MAX_LATTICE) return NONE;
+        double[] xs = new double[(int) (k1 - k0) + 1];
+        for (int i = 0; i < xs.length; i++) xs[i] = (offset + (k0 + i) * period) / scale;
+        return xs;
+    }
+
+    private static double[] sorted(double[] v) {
+        double[] s = v.clone();
+        Arrays.sort(s);
+        return s;
+    }
+
+    public double getLo() {
+        return lo;
+    }
+
+    public double getHi() {
+        return hi;
+    }
+
+    public int getIntervalCount() {
+        return intervals.length / 2;
+    }
+
+    public double getIntervalStart(int i) {
+        return intervals[2 * i];
+    }
+
+    public double getIntervalEnd(int i) {
+        return intervals[2 * i + 1];
+    }
+
+    public double[] getPoles() {
+        return poles.clone();
+    }
+
+    public double[] getJumps() {
+        return jumps.clone();
+    }
+
+    /** How far a reported pole or jump may lie from the true one; 0 when they are exact. */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /** Poles and jumps together, sorted: the points a curve must not be drawn or solved across. */
+    public double[] getBreaks() {
+        double[] all = Arrays.copyOf(poles, poles.length + jumps.length);
+        System.arraycopy(jumps, 0, all, poles.length, jumps.length);
+        Arrays.sort(all);
+        return all;
+    }
+
+    /**
+     * The same domain cut down to [a, b], which should lie within [getLo(), getHi()]. Breaks
+     * reported just outside [a, b] but within the tolerance of it are kept.
+     */
+    public Domain restrict(double a, double b) {
+        if (a <= lo && b >= hi) return this;
+        double[] cut = new double[intervals.length];
+        int n = 0;
+        for (int i = 0; i < intervals.length; i += 2) {
+            double s = Math.max(a, intervals[i]), e = Math.min(b, intervals[i + 1]);
+            if (s < e) {
+                cut[n++] = s;
+                cut[n++] = e;
+            }
+        }
+        return new Domain(a, b, Arrays.copyOf(cut, n), between(poles, a - tolerance, b + tolerance),
+                between(jumps, a - tolerance, b + tolerance), tolerance);
+    }
+
+    private static double[] between(double[] points, double a, double b) {
+        int from = 0, to = points.length;
+        while (from < to && points[from] < a) from++;
+        while (to > from && points[to - 1] > b) to--;
+        return Arrays.copyOfRange(points, from, to);
+    }
+
+    /** Whether x lies inside one of the intervals. */
+    public boolean contains(double x) {
+        int i = index(x);
+        return i >= 0 && x <= intervals[2 * i + 1];
+    }
+
+    /** Whether some interval overlaps [a, b]. */
+    public boolean overlaps(double a, double b) {
+        int i = index(b);
+        return i >= 0 && intervals[2 * i + 1] >= a;
+    }
+
+    /** Whether a pole or jump lies in [a, b]. */
+    public boolean breaksWithin(double a, double b) {
+        return within(poles, a, b) || within(jumps, a, b);
+    }
+
+    // The last interval starting at or before x, or -1
+    private int index(double x) {
+        int l = 0, h = intervals.length / 2 - 1, found = -1;
+        while (l <= h) {
+            int m = (l + h) >>> 1;
+            if (intervals[2 * m] <= x) {
+                found = m;
+                l = m + 1;
+            } else {
+                h = m - 1;
+            }
+        }
+        return found;
+    }
+
+    private static boolean within(double[] points, double a, double b) {
+        int i = Arrays.binarySearch(points, a);
+        if (i >= 0) return true;
+        i = -i - 1;
+        return i < points.length && points[i] <= b;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Domain[");
+        for (int i = 0; i < intervals.length; i += 2) {
+            if (i > 0) sb.append(" u ");
+            sb.append('[').append(intervals[i]).append(", ").append(intervals[i + 1]).append(']');
+        }
+        return sb.append(", poles=").append(Arrays.toString(poles))
+                .append(", jumps=").append(Arrays.toString(jumps))
+                .append(tolerance > 0 ? ", tolerance=" + tolerance : "").append(']').toString();
+    }
+}
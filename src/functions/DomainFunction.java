@@ -0,0 +1,11 @@
+package functions;
+
+/**
+ * A function that knows, from its own definition, where it is defined and where it
+ * breaks, so samplers and solvers can skip undefined stretches and split at poles and
+ * jumps instead of probing them.
+ */
+public interface DomainFunction extends Function {
+    /** The domain within [lo, hi]; never null, and never throws for finite lo <= hi. */
+    Domain domain(double lo, double hi);
+}
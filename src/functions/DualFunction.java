@@ -0,0 +1,20 @@
+package functions;
+
+/**
+ * A function that evaluates its value and its exact slope in one pass (forward-mode
+ * automatic differentiation), with no finite-difference step.
+ */
+public interface DualFunction extends Function {
+    /** Writes f(x) to out[0] and f'(x) to out[1]. */
+    void evaluateDual(double x, double[] out);
+
+    /** values[i] = f(xs[i]) and slopes[i] = f'(xs[i]) for i in [from, to). */
+    default void evaluateDual(double[] xs, double[] values, double[] slopes, int from, int to) {
+        double[] pair = new double[2];
+        for (int i = from; i < to; i++) {
+            evaluateDual(xs[i], pair);
+            values[i] = pair[0];
+            slopes[i] = pair[1];
+        }
+    }
+}
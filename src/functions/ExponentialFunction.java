@@ -1,36 +1,66 @@
 package functions;
 
-import java.awt.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * coefficient * base ^ (scale * x + shift), e.g. "e^x", "2^x", "3e^(2x)", "0.5*2^(x - 1)"
+ * or "exp(-x)". A numeric base needs a "*" after its coefficient so "32^x" stays 32^x.
+ * The expression is analysed once; anything else is rejected by the constructor.
+ */
+public class ExponentialFunction implements DualFunction {
+    private static final Pattern FORM = Pattern.compile("([+-]?)(?:(" + Affine.NUMBER + ")\\*|("
+            + Affine.NUMBER + ")(?=e))?(?:(e|" + Affine.NUMBER + ")\\^|exp)(.+)");
 
-public class ExponentialFunction implements Function {
     private final String expression;
-    private Color color;
+    private final double coefficient;
+    private final double base;
+    private final double logBase;
+    private final double scale;
+    private final double shift;
 
     public ExponentialFunction(String expression) {
         this.expression = expression;
+        Matcher m = FORM.matcher(Affine.normalize(expression));
+        Affine arg = m.matches() ? Affine.argument(m.group(5)) : null;
+        if (arg == null) throw Affine.unsupported("exponential", expression);
+        String c = m.group(2) != null ? m.group(2) : m.group(3);
+        this.coefficient = (m.group(1).equals("-") ? -1 : 1) * (c != null ? Double.parseDouble(c) : 1);
+        this.base = m.group(4) == null || m.group(4).equals("e") ? Math.E : Double.parseDouble(m.group(4));
+        if (!(base > 0) || Double.isInfinite(base)) throw Affine.unsupported("exponential", expression);
+        this.logBase = Math.log(base);
+        this.scale = arg.scale;
+        this.shift = arg.shift;
+    }
+
+    public double getCoefficient() {
+        return coefficient;
+    }
+
+    public double getBase() {
+        return base;
     }
 
     @Override
     public double evaluate(double x) {
-        try {
-            if (expression.contains("e^")) {
-                return Math.exp(x);
-            } else if (expression.matches(".*\\d+\\^x.*")) {
-                double base = Double.parseDouble(expression.split("\\^")[0]);
-                return Math.pow(base, x);
-            }
-        } catch (Exception ignored) {}
-        return Double.NaN;
+        double u = scale * x + shift;
+        return coefficient * (base == Math.E ? Math.exp(u) : Math.pow(base, u));
     }
 
     @Override
-    public void setColor(Color color) {
-        this.color = color;
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        if (base == Math.E) {
+            for (int i = from; i < to; i++) out[i] = coefficient * Math.exp(scale * xs[i] + shift);
+        } else {
+            for (int i = from; i < to; i++) out[i] = coefficient * Math.pow(base, scale * xs[i] + shift);
+        }
     }
 
     @Override
-    public Color getColor() {
-        return color;
+    public void evaluateDual(double x, double[] out) {
+        double value = evaluate(x);
+        out[0] = value;
+        out[1] = value * scale * logBase;
     }
 
     @Override
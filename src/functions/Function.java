@@ -1,12 +1,18 @@
 package functions;
 
-import java.awt.Color;
-
 public interface Function {
+    /** Must be safe to call from several threads at once; renderers and solvers share instances. */
     double evaluate(double x);
 
-    Color getColor();
-    void setColor(Color color);
+    /**
+     * Evaluates xs[from..to) into out[from..to); the two arrays must be distinct.
+     * Implementations override this when they can do better than one virtual call per point.
+     */
+    default void evaluate(double[] xs, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = evaluate(xs[i]);
+        }
+    }
 
     // 🔥 This is the missing method causing all @Override errors
     String getExpression();
@@ -1,36 +1,74 @@
 package functions;
 
-import java.awt.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * coefficient * log(scale * x + shift) where log is ln, log (base 10), log10 or log2,
+ * e.g. "ln(x)", "log(x)", "2*ln(3x + 1)". Not defined where the argument is 0 or
+ * negative. The expression is analysed once; anything else is rejected by the constructor.
+ */
+public class LogarithmicFunction implements DualFunction, DomainFunction {
+    private static final Pattern FORM = Pattern.compile(Affine.COEFFICIENT + "(ln|log10|log2|log)(.+)");
 
-public class LogarithmicFunction implements Function {
     private final String expression;
-    private Color color;
+    private final double coefficient;
+    private final double scale;
+    private final double shift;
+    // ln(base), so that log_base(u) = ln(u) / lnBase; 1 for ln itself
+    private final double lnBase;
+    private final boolean decimal;
 
     public LogarithmicFunction(String expression) {
         this.expression = expression;
+        Matcher m = FORM.matcher(Affine.normalize(expression));
+        Affine arg = m.matches() ? Affine.argument(m.group(3)) : null;
+        if (arg == null) throw Affine.unsupported("logarithmic", expression);
+        this.coefficient = Affine.coefficient(m.group(1));
+        String log = m.group(2);
+        this.decimal = log.equals("log") || log.equals("log10");
+        this.lnBase = decimal ? Math.log(10) : log.equals("log2") ? Math.log(2) : 1;
+        this.scale = arg.scale;
+        this.shift = arg.shift;
+    }
+
+    public double getCoefficient() {
+        return coefficient;
+    }
+
+    private double log(double u) {
+        if (!(u > 0)) return Double.NaN;
+        return coefficient * (decimal ? Math.log10(u) : lnBase == 1 ? Math.log(u) : Math.log(u) / lnBase);
     }
 
     @Override
     public double evaluate(double x) {
-        try {
-            if (x <= 0) return Double.NaN;
-            if (expression.contains("ln"))
-                return Math.log(x);
-            else
-                return Math.log10(x);
-        } catch (Exception ignored) {
-            return Double.NaN;
+        return log(scale * x + shift);
+    }
+
+    @Override
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = log(scale * xs[i] + shift);
         }
     }
 
     @Override
-    public void setColor(Color color) {
-        this.color = color;
+    public void evaluateDual(double x, double[] out) {
+        double u = scale * x + shift;
+        out[0] = log(u);
+        out[1] = u > 0 ? coefficient * scale / (u * lnBase) : Double.NaN;
     }
 
+    /** Where scale * x + shift > 0, with a pole where it reaches 0. */
     @Override
-    public Color getColor() {
-        return color;
+    public Domain domain(double lo, double hi) {
+        double[] none = new double[0];
+        if (scale == 0) return shift > 0 ? Domain.everywhere(lo, hi) : new Domain(lo, hi, none, none, none);
+        double edge = -shift / scale;
+        double a = scale > 0 ? Math.max(lo, edge) : lo, b = scale > 0 ? hi : Math.min(hi, edge);
+        double[] poles = edge >= lo && edge <= hi ? new double[]{edge} : none;
+        return new Domain(lo, hi, a < b ? new double[]{a, b} : none, poles, none);
     }
 
     @Override
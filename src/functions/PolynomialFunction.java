@@ -1,21 +1,63 @@
 package functions;
 
-import java.awt.*;
+import java.util.Arrays;
 
-public class PolynomialFunction implements Function {
+public class PolynomialFunction implements Differentiable, DualFunction {
     private final double[] coefficients; // from constant to highest degree
-    private Color color;
+    private final int degree;
     private final String expression;
+    private volatile PolynomialFunction derivative;
 
     public PolynomialFunction(String expression) {
+        this(parse(expression), expression);
+    }
+
+    /** coefficients[i] multiplies x^i; trailing zeros are dropped. */
+    public PolynomialFunction(double[] coefficients, String expression) {
+        int d = coefficients.length - 1;
+        while (d > 0 && coefficients[d] == 0) d--;
+        this.degree = Math.max(d, 0);
+        this.coefficients = coefficients.length == 0 ? new double[1] : Arrays.copyOf(coefficients, degree + 1);
         this.expression = expression;
-        this.coefficients = parse(expression);
     }
 
-    private double[] parse(String expr) {
+    public int getDegree() {
+        return degree;
+    }
+
+    /** The coefficient of x^i, 0 above the degree. */
+    public double coefficient(int i) {
+        return i <= degree ? coefficients[i] : 0;
+    }
+
+    public double[] getCoefficients() {
+        return coefficients.clone();
+    }
+
+    public PolynomialFunction minus(PolynomialFunction other) {
+        double[] c = new double[Math.max(degree, other.degree) + 1];
+        for (int i = 0; i < c.length; i++) c[i] = coefficient(i) - other.coefficient(i);
+        return new PolynomialFunction(c, "(" + expression + ") - (" + other.expression + ")");
+    }
+
+    @Override
+    public PolynomialFunction derivative() {
+        PolynomialFunction d = derivative;
+        if (d == null) {
+            double[] c = new double[Math.max(1, degree)];
+            for (int i = 1; i <= degree; i++) {
+                c[i - 1] = coefficients[i] * i;
+            }
+            d = new PolynomialFunction(c, "d/dx " + expression);
+            derivative = d;
+        }
+        return d;
+    }
+
+    private static double[] parse(String expr) {
         expr = expr.replaceAll("\\s+", "").replaceAll("-", "+-");
         String[] terms = expr.split("\\+");
-        double[] coef = new double[10]; // Supports degree 9 max
+        double[] coef = new double[1];
 
         for (String term : terms) {
             if (term.isEmpty()) continue;
@@ -37,6 +79,7 @@ public class PolynomialFunction implements Function {
                 degree = 0;
             }
 
+            if (degree >= coef.length) coef = Arrays.copyOf(coef, degree + 1);
             coef[degree] += value;
         }
 
@@ -45,21 +88,38 @@ public class PolynomialFunction implements Function {
 
     @Override
     public double evaluate(double x) {
-        double result = 0;
-        for (int i = 0; i < coefficients.length; i++) {
-            result += coefficients[i] * Math.pow(x, i);
+        double result = coefficients[degree];
+        for (int i = degree - 1; i >= 0; i--) {
+            result = result * x + coefficients[i];
         }
         return result;
     }
 
+    // Horner across the whole batch one coefficient at a time; the inner loop is plain
+    // multiply-add over arrays, which the JIT vectorizes
     @Override
-    public void setColor(Color color) {
-        this.color = color;
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        double top = coefficients[degree];
+        for (int i = from; i < to; i++) {
+            out[i] = top;
+        }
+        for (int k = degree - 1; k >= 0; k--) {
+            double c = coefficients[k];
+            for (int i = from; i < to; i++) {
+                out[i] = out[i] * xs[i] + c;
+            }
+        }
     }
 
     @Override
-    public Color getColor() {
-        return color;
+    public void evaluateDual(double x, double[] out) {
+        double p = coefficients[degree], dp = 0;
+        for (int i = degree - 1; i >= 0; i--) {
+            dp = dp * x + p;
+            p = p * x + coefficients[i];
+        }
+        out[0] = p;
+        out[1] = dp;
     }
 
     @Override
@@ -1,10 +1,7 @@
 package functions;
 
-import java.awt.*;
-
-public class StepFunction implements Function {
+public class StepFunction implements DualFunction, DomainFunction {
     private final String expression;
-    private Color color;
 
     public StepFunction(String expression) {
         this.expression = expression;
@@ -16,13 +13,23 @@ public class StepFunction implements Function {
     }
 
     @Override
-    public void setColor(Color color) {
-        this.color = color;
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = Math.floor(xs[i]);
+        }
+    }
+
+    // Flat between the jumps, so the slope is 0 almost everywhere
+    @Override
+    public void evaluateDual(double x, double[] out) {
+        out[0] = Math.floor(x);
+        out[1] = 0;
     }
 
+    // Jumps by one at every integer
     @Override
-    public Color getColor() {
-        return color;
+    public Domain domain(double lo, double hi) {
+        return Domain.split(lo, hi, new double[0], Domain.lattice(lo, hi, 1, 0, 1));
     }
 
     @Override
@@ -1,41 +1,98 @@
 package functions;
 
-import java.awt.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * amplitude * op(frequency * x + phase) for op one of sin, cos, tan, e.g. "sin(x)",
+ * "2cos(3x - 1)" or "-0.5*tan(x + 2)". The expression is analysed once; anything else
+ * is rejected by the constructor.
+ */
+public class TrigFunction implements DualFunction, DomainFunction {
+    private enum Op { SIN, COS, TAN }
+
+    private static final Pattern FORM = Pattern.compile(Affine.COEFFICIENT + "(sin|cos|tan)(.+)");
 
-public class TrigFunction implements Function {
-    private Color color;
     private final String expression;
+    private final Op op;
+    private final double amplitude;
+    private final double frequency;
+    private final double phase;
 
     public TrigFunction(String expression) {
         this.expression = expression;
+        Matcher m = FORM.matcher(Affine.normalize(expression));
+        Affine arg = m.matches() ? Affine.argument(m.group(3)) : null;
+        if (arg == null) throw Affine.unsupported("trigonometric", expression);
+        this.amplitude = Affine.coefficient(m.group(1));
+        this.op = Op.valueOf(m.group(2).toUpperCase());
+        this.frequency = arg.scale;
+        this.phase = arg.shift;
+    }
+
+    public double getAmplitude() {
+        return amplitude;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    public double getPhase() {
+        return phase;
     }
 
     @Override
     public double evaluate(double x) {
-        try {
-            String e = expression.toLowerCase().replace("x", "(" + x + ")");
-            if (e.contains("sin")) return evalTrig(e, "sin", Math::sin);
-            if (e.contains("cos")) return evalTrig(e, "cos", Math::cos);
-            if (e.contains("tan")) return evalTrig(e, "tan", Math::tan);
-        } catch (Exception ignored) {}
-        return Double.NaN;
+        double u = frequency * x + phase;
+        switch (op) {
+            case SIN: return amplitude * Math.sin(u);
+            case COS: return amplitude * Math.cos(u);
+            default: return amplitude * Math.tan(u);
+        }
     }
 
-    private double evalTrig(String expr, String op, java.util.function.DoubleUnaryOperator trigFunc) {
-        String inner = expr.substring(expr.indexOf(op) + op.length());
-        inner = inner.replaceAll("[()]", "");
-        double val = Double.parseDouble(inner);
-        return trigFunc.applyAsDouble(val);
+    @Override
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        switch (op) {
+            case SIN:
+                for (int i = from; i < to; i++) out[i] = amplitude * Math.sin(frequency * xs[i] + phase);
+                break;
+            case COS:
+                for (int i = from; i < to; i++) out[i] = amplitude * Math.cos(frequency * xs[i] + phase);
+                break;
+            default:
+                for (int i = from; i < to; i++) out[i] = amplitude * Math.tan(frequency * xs[i] + phase);
+        }
     }
 
     @Override
-    public void setColor(Color color) {
-        this.color = color;
+    public void evaluateDual(double x, double[] out) {
+        double u = frequency * x + phase;
+        double k = amplitude * frequency;
+        switch (op) {
+            case SIN:
+                out[0] = amplitude * Math.sin(u);
+                out[1] = k * Math.cos(u);
+                break;
+            case COS:
+                out[0] = amplitude * Math.cos(u);
+                out[1] = -k * Math.sin(u);
+                break;
+            default: {
+                double c = Math.cos(u);
+                out[0] = amplitude * Math.tan(u);
+                out[1] = k / (c * c);
+            }
+        }
     }
 
+    /** Everywhere for sin and cos; tan has a pole wherever frequency * x + phase = pi/2 + k*pi. */
     @Override
-    public Color getColor() {
-        return color;
+    public Domain domain(double lo, double hi) {
+        if (op != Op.TAN || frequency == 0) return Domain.everywhere(lo, hi);
+        double[] poles = Domain.lattice(lo, hi, frequency, Math.PI / 2 - phase, Math.PI);
+        return Domain.split(lo, hi, poles, new double[0]);
     }
 
     @Override
@@ -0,0 +1,96 @@
+package parser;
+
+/**
+ * The functions an expression may call, with the same names and semantics as exp4j's
+ * built-ins plus our {@code step}. Each one names the static method compiled code
+ * invokes for it.
+ */
+public enum Builtin {
+    SIN("sin", "java/lang/Math", "sin"),
+    COS("cos", "java/lang/Math", "cos"),
+    TAN("tan", "java/lang/Math", "tan"),
+    COT("cot", Builtin.SUPPORT, "cot"),
+    ASIN("asin", "java/lang/Math", "asin"),
+    ACOS("acos", "java/lang/Math", "acos"),
+    ATAN("atan", "java/lang/Math", "atan"),
+    SINH("sinh", "java/lang/Math", "sinh"),
+    COSH("cosh", "java/lang/Math", "cosh"),
+    TANH("tanh", "java/lang/Math", "tanh"),
+    LOG("log", "java/lang/Math", "log"),
+    LOG10("log10", "java/lang/Math", "log10"),
+    LOG2("log2", Builtin.SUPPORT, "log2"),
+    LOG1P("log1p", "java/lang/Math", "log1p"),
+    EXP("exp", "java/lang/Math", "exp"),
+    EXPM1("expm1", "java/lang/Math", "expm1"),
+    SQRT("sqrt", "java/lang/Math", "sqrt"),
+    CBRT("cbrt", "java/lang/Math", "cbrt"),
+    ABS("abs", "java/lang/Math", "abs"),
+    CEIL("ceil", "java/lang/Math", "ceil"),
+    FLOOR("floor", "java/lang/Math", "floor"),
+    SIGNUM("signum", "java/lang/Math", "signum"),
+    STEP("step", Builtin.SUPPORT, "step"),
+    POW("pow", "java/lang/Math", "pow", 2);
+
+    static final String SUPPORT = "parser/CompiledSupport";
+
+    public final String name;
+    public final int arity;
+    final String owner;
+    final String method;
+
+    Builtin(String name, String owner, String method) {
+        this(name, owner, method, 1);
+    }
+
+    Builtin(String name, String owner, String method, int arity) {
+        this.name = name;
+        this.owner = owner;
+        this.method = method;
+        this.arity = arity;
+    }
+
+    String descriptor() {
+        return arity == 1 ? "(D)D" : "(DD)D";
+    }
+
+    public double apply(double a) {
+        switch (this) {
+            case SIN: return Math.sin(a);
+            case COS: return Math.cos(a);
+            case TAN: return Math.tan(a);
+            case COT: return CompiledSupport.cot(a);
+            case ASIN: return Math.asin(a);
+            case ACOS: return Math.acos(a);
+            case ATAN: return Math.atan(a);
+            case SINH: return Math.sinh(a);
+            case COSH: return Math.cosh(a);
+            case TANH: return Math.tanh(a);
+            case LOG: return Math.log(a);
+            case LOG10: return Math.log10(a);
+            case LOG2: return CompiledSupport.log2(a);
+            case LOG1P: return Math.log1p(a);
+            case EXP: return Math.exp(a);
+            case EXPM1: return Math.expm1(a);
+            case SQRT: return Math.sqrt(a);
+            case CBRT: return Math.cbrt(a);
+            case ABS: return Math.abs(a);
+            case CEIL: return Math.ceil(a);
+            case FLOOR: return Math.floor(a);
+            case SIGNUM: return Math.signum(a);
+            case STEP: return CompiledSupport.step(a);
+            default: throw new IllegalStateException(name + " takes " + arity + " arguments");
+        }
+    }
+
+    public double apply(double a, double b) {
+        if (this == POW) return Math.pow(a, b);
+        throw new IllegalStateException(name + " takes " + arity + " argument");
+    }
+
+    public static Builtin byName(String name) {
+        for (Builtin b : values()) {
+            if (b.name.equals(name)) return b;
+        }
+        return null;
+    }
+}
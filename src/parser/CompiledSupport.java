@@ -0,0 +1,32 @@
+package parser;
+
+/**
+ * Static helpers called from compiled expressions for operations that exp4j defines
+ * differently from the plain JVM instruction. Where exp4j throws (division by zero,
+ * cot of a multiple of pi) these return NaN, which is what ParsedFunction has always
+ * reported for those points.
+ */
+public final class CompiledSupport {
+    private static final double LN2 = Math.log(2.0);
+
+    private CompiledSupport() {
+    }
+
+    public static double div(double a, double b) {
+        return b == 0 ? Double.NaN : a / b;
+    }
+
+    public static double cot(double a) {
+        double tan = Math.tan(a);
+        return tan == 0 ? Double.NaN : 1 / tan;
+    }
+
+    public static double log2(double a) {
+        return Math.log(a) / LN2;
+    }
+
+    // Heaviside step: 1 for x >= 0, else 0
+    public static double step(double a) {
+        return a >= 0 ? 1.0 : 0.0;
+    }
+}
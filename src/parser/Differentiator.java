@@ -0,0 +1,131 @@
+package parser;
+
+import parser.Node.Kind;
+
+/**
+ * Symbolic d/dx of a {@link Node} tree, simplified as it goes so higher orders stay
+ * small. Piecewise-constant functions (floor, ceil, signum, step) differentiate to 0,
+ * their derivative almost everywhere.
+ */
+public class Differentiator {
+    private static final Node ZERO = Node.constant(0);
+    private static final Node ONE = Node.constant(1);
+
+    private Differentiator() {
+    }
+
+    public static Node differentiate(Node n) {
+        return Simplifier.simplify(d(n));
+    }
+
+    /** The order-th derivative; order 0 returns the tree itself. */
+    public static Node differentiate(Node n, int order) {
+        for (int i = 0; i < order; i++) n = differentiate(n);
+        return n;
+    }
+
+    private static Node d(Node n) {
+        switch (n.kind) {
+            case CONST:
+            case PARAM:
+                return ZERO;
+            case VAR:
+                return ONE;
+            case NEG:
+                return Node.negate(d(n.a));
+            case ADD:
+                return add(d(n.a), d(n.b));
+            case SUB:
+                return sub(d(n.a), d(n.b));
+            case MUL:
+                return add(mul(d(n.a), n.b), mul(n.a, d(n.b)));
+            case DIV:
+                if (n.b.isConstant()) return div(d(n.a), n.b);
+                return div(sub(mul(d(n.a), n.b), mul(n.a, d(n.b))), pow(n.b, 2));
+            case MOD:
+                // a % b = a - trunc(a / b) * b, and trunc(a / b) is (a - a % b) / b
+                if (n.b.isConstant()) return d(n.a);
+                return sub(d(n.a), mul(div(sub(n.a, n), n.b), d(n.b)));
+            case POW:
+                return power(n, n.a, n.b);
+            case CALL:
+                return call(n);
+            default:
+                throw new IllegalStateException("Unknown node " + n.kind);
+        }
+    }
+
+    private static Node power(Node n, Node base, Node exponent) {
+        if (exponent.isConstant()) {
+            return mul(mul(exponent, pow(base, exponent.value - 1)), d(base));
+        }
+        if (!exponent.dependsOnX()) {
+            // x^n with a parameter n: n x^(n-1), not the u^v rule, which divides by x
+            return mul(mul(exponent, Node.binary(Kind.POW, base, sub(exponent, ONE))), d(base));
+        }
+        if (base.isConstant()) {
+            return mul(mul(n, Node.constant(Math.log(base.value))), d(exponent));
+        }
+        // d(u^v) = u^v * (v' ln u + v u' / u)
+        return mul(n, add(mul(d(exponent), call(Builtin.LOG, base)), div(mul(exponent, d(base)), base)));
+    }
+
+    private static Node call(Node n) {
+        Node u = n.a;
+        Node du = d(u);
+        switch (n.function) {
+            case SIN: return mul(call(Builtin.COS, u), du);
+            case COS: return Node.negate(mul(call(Builtin.SIN, u), du));
+            case TAN: return div(du, pow(call(Builtin.COS, u), 2));
+            case COT: return Node.negate(div(du, pow(call(Builtin.SIN, u), 2)));
+            case ASIN: return div(du, call(Builtin.SQRT, sub(ONE, pow(u, 2))));
+            case ACOS: return Node.negate(div(du, call(Builtin.SQRT, sub(ONE, pow(u, 2)))));
+            case ATAN: return div(du, add(ONE, pow(u, 2)));
+            case SINH: return mul(call(Builtin.COSH, u), du);
+            case COSH: return mul(call(Builtin.SINH, u), du);
+            case TANH: return div(du, pow(call(Builtin.COSH, u), 2));
+            case LOG: return div(du, u);
+            case LOG10: return div(du, mul(Node.constant(Math.log(10)), u));
+            case LOG2: return div(du, mul(Node.constant(Math.log(2)), u));
+            case LOG1P: return div(du, add(ONE, u));
+            case EXP: return mul(n, du);
+            case EXPM1: return mul(call(Builtin.EXP, u), du);
+            case SQRT: return div(du, mul(Node.constant(2), n));
+            case CBRT: return div(du, mul(Node.constant(3), pow(n, 2)));
+            case ABS: return mul(call(Builtin.SIGNUM, u), du);
+            case CEIL:
+            case FLOOR:
+            case SIGNUM:
+            case STEP:
+                return ZERO;
+            case POW:
+                return power(n, u, n.b);
+            default:
+                throw new IllegalStateException("No derivative for " + n.function.name);
+        }
+    }
+
+    private static Node call(Builtin f, Node a) {
+        return Node.call(f, a);
+    }
+
+    private static Node add(Node a, Node b) {
+        return Node.binary(Kind.ADD, a, b);
+    }
+
+    private static Node sub(Node a, Node b) {
+        return Node.binary(Kind.SUB, a, b);
+    }
+
+    private static Node mul(Node a, Node b) {
+        return Node.binary(Kind.MUL, a, b);
+    }
+
+    private static Node div(Node a, Node b) {
+        return Node.binary(Kind.DIV, a, b);
+    }
+
+    private static Node pow(Node a, double exponent) {
+        return Node.binary(Kind.POW, a, Node.constant(exponent));
+    }
+}
@@ -0,0 +1,317 @@
+package parser;
+
+import functions.Domain;
+import parser.Node.Kind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Derives a {@link Domain} from a tree. Every operation that can break a function
+ * names the subexpression whose zeros are the candidates: the divisor of a division,
+ * cos(u) for tan(u), the argument of a logarithm or square root, sin(pi * u) for
+ * floor(u), and so on. Those zeros are located by interval branch and prune, which
+ * cannot miss one that only touches 0 (the pole of 1 / x^2). Between consecutive
+ * candidates nothing can change, so one evaluation per piece classifies it, and a few
+ * evaluations beside each candidate tell a pole from a jump from a removable hole.
+ * Where the candidates are known in closed form, as for floor(u) or u % c with u
+ * affine in x, they are listed directly however many there are.
+ * Nothing here throws; an expression too busy to analyse within the budget just gets
+ * fewer candidates.
+ */
+final class DomainAnalyzer {
+    private enum Source { POLE, JUMP, EDGE }
+
+    private static final int MAX_BOXES = 20_000;
+    private static final int MAX_CANDIDATES = 1 << 17;
+    private static final int FALLBACK_SAMPLES = 4096;
+    private static final int MAX_FALLBACK_SAMPLES = 1 << 18;
+    // Shifts the fallback grid off the dyadic points where periodic conditions vanish
+    private static final double FALLBACK_OFFSET = 0.5 * (3 - Math.sqrt(5));
+
+    private final Node tree;
+    private final double lo, hi;
+    private final double width;
+    private final List<Node> conditions = new ArrayList<>();
+    private final List<double[]> exact = new ArrayList<>();   // the zeros of a condition when known, else null
+    private final List<Source> sources = new ArrayList<>();
+
+    private DomainAnalyzer(Node tree, double lo, double hi) {
+        this.tree = tree;
+        this.lo = lo;
+        this.hi = hi;
+        this.width = Math.max((hi - lo) * 1e-10, 1e-14 * Math.max(1, Math.max(Math.abs(lo), Math.abs(hi))));
+    }
+
+    static Domain analyze(Node tree, double lo, double hi) {
+        if (!(hi > lo) || Double.isInfinite(lo) || Double.isInfinite(hi)) return Domain.everywhere(lo, hi);
+        return new DomainAnalyzer(tree, lo, hi).run();
+    }
+
+    private Domain run() {
+        collect(tree);
+        List<double[]> found = new ArrayList<>();   // {x, source ordinal}
+        for (int i = 0; i < conditions.size(); i++) {
+            double[] zeros = exact.get(i);
+            if (zeros == null && found.size() >= MAX_CANDIDATES) continue;
+            for (double x : zeros != null ? zeros : unbox(zeros(conditions.get(i)))) {
+                found.add(new double[]{x, sources.get(i).ordinal()});
+            }
+        }
+        found.sort((p, q) -> Double.compare(p[0], q[0]));
+
+        // Candidates closer than the resolution are one point; a pole source wins
+        List<double[]> points = new ArrayList<>();
+        for (double[] p : found) {
+            double[] last = points.isEmpty() ? null : points.get(points.size() - 1);
+            if (last != null && p[0] - last[0] <= 4 * width) {
+                last[1] = Math.min(last[1], p[1]);
+            } else {
+                points.add(p);
+            }
+        }
+
+        List<Double> intervals = new ArrayList<>(), poles = new ArrayList<>(), jumps = new ArrayList<>();
+        double start = Double.NaN;   // start of the interval being built, NaN when outside the domain
+        double left = lo;
+        for (int i = 0; i <= points.size(); i++) {
+            double right = i < points.size() ? points.get(i)[0] : hi;
+            boolean defined = right > left ? finite(tree.eval(0.5 * (left + right))) : finite(tree.eval(left));
+            if (defined && Double.isNaN(start)) start = left;
+            if (!defined && !Double.isNaN(start)) {
+                intervals.add(start);
+                intervals.add(left);
+                start = Double.NaN;
+            }
+            if (i == points.size()) break;
+
+            double x = right;
+            Source source = Source.values()[(int) points.get(i)[1]];
+            double h = Math.max(1e-7 * Math.max(1, Math.abs(x)), 4 * width);
+            double l1 = tree.eval(x - h), l3 = tree.eval(x - 3 * h);
+            double r1 = tree.eval(x + h), r3 = tree.eval(x + 3 * h);
+            boolean isPole = source == Source.POLE && growsToward(l1, l3, r1, r3);
+            boolean isJump = !isPole && finite(l1) && finite(r1) && finite(l3) && finite(r3)
+                    && Math.abs(r1 - l1) > 10 * (Math.abs(l1 - l3) + Math.abs(r3 - r1)) + 1e-12 * (1 + Math.abs(l1));
+            if (isPole) poles.add(x);
+            if (isJump) jumps.add(x);
+            // The interval runs on through x only where the function is continuous and defined at x
+            if (!Double.isNaN(start) && (isPole || isJump || !finite(tree.eval(x)))) {
+                intervals.add(start);
+                intervals.add(x);
+                start = Double.NaN;
+            }
+            left = x;
+        }
+        if (!Double.isNaN(start)) {
+            intervals.add(start);
+            intervals.add(hi);
+        }
+        // Points are cluster midpoints, and clusters closer than 4 widths were merged
+        return new Domain(lo, hi, unbox(intervals), unbox(poles), unbox(jumps), 4 * width);
+    }
+
+    // |f| increases toward x on every side where it is defined, and on at least one side
+    private static boolean growsToward(double l1, double l3, double r1, double r3) {
+        boolean left = finite(l1) && finite(l3), right = finite(r1) && finite(r3);
+        if (!left && !right) return Double.isInfinite(l1) || Double.isInfinite(r1);
+        if (left && !(Math.abs(l1) > 1.05 * Math.abs(l3))) return false;
+        if (right && !(Math.abs(r1) > 1.05 * Math.abs(r3))) return false;
+        return true;
+    }
+
+    // Records, for every operation in the tree that can break, the expression whose zeros are its candidates
+    private void collect(Node n) {
+        if (n.a != null) collect(n.a);
+        if (n.b != null) collect(n.b);
+        switch (n.kind) {
+            case DIV:
+                if (!n.b.isConstant()) add(n.b, Source.POLE);
+                break;
+            case MOD:
+                if (!n.b.isConstant()) add(n.b, Source.POLE);
+                else if (n.b.value != 0 && !n.a.isConstant() && !lattice(n.a, Math.abs(n.b.value)))
+                    add(call(Builtin.SIN, mul(Math.PI / n.b.value, n.a)), Source.JUMP);
+                break;
+            case POW:
+                power(n.a, n.b);
+                break;
+            case CALL:
+                if (n.function == Builtin.POW) {
+                    power(n.a, n.b);
+                    break;
+                }
+                if (n.a.isConstant()) break;
+                switch (n.function) {
+                    case TAN: add(call(Builtin.COS, n.a), Source.POLE); break;
+                    case COT: add(call(Builtin.SIN, n.a), Source.POLE); break;
+                    case LOG:
+                    case LOG10:
+                    case LOG2:
+                        add(n.a, Source.POLE);
+                        break;
+                    case LOG1P: add(Node.binary(Kind.ADD, n.a, Node.constant(1)), Source.POLE); break;
+                    case SQRT: add(n.a, Source.EDGE); break;
+                    case ASIN:
+                    case ACOS:
+                        add(Node.binary(Kind.SUB, n.a, Node.constant(1)), Source.EDGE);
+                        add(Node.binary(Kind.ADD, n.a, Node.constant(1)), Source.EDGE);
+                        break;
+                    case FLOOR:
+                    case CEIL:
+                        if (!lattice(n.a, 1)) add(call(Builtin.SIN, mul(Math.PI, n.a)), Source.JUMP);
+                        break;
+                    case SIGNUM:
+                    case STEP:
+                        add(n.a, Source.JUMP);
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void power(Node base, Node exponent) {
+        if (base.isConstant()) return;
+        if (!exponent.isConstant()) add(base, Source.EDGE);
+        else if (exponent.value < 0) add(base, Source.POLE);
+        else if (exponent.value != Math.rint(exponent.value)) add(base, Source.EDGE);
+    }
+
+    private void add(Node condition, Source source) {
+        conditions.add(condition);
+        exact.add(null);
+        sources.add(source);
+    }
+
+    // For u = s * x + t, jumps where u crosses a multiple of period: listed rather than searched
+    private boolean lattice(Node u, double period) {
+        double[] c = PolynomialExtractor.coefficients(u);
+        if (c == null || c.length != 2 || c[1] == 0 || !Double.isFinite(c[0]) || !Double.isFinite(c[1])) return false;
+        double[] zeros = Domain.lattice(lo, hi, c[1], -c[0], period);
+        if (zeros.length == 0 && Math.abs(c[1]) * (hi - lo) / period > 1) return false;   // too many to list
+        conditions.add(u);
+        exact.add(zeros);
+        sources.add(Source.JUMP);
+        return true;
+    }
+
+    private static Node call(Builtin f, Node a) {
+        return Node.call(f, a);
+    }
+
+    private static Node mul(double c, Node a) {
+        return Node.binary(Kind.MUL, Node.constant(c), a);
+    }
+
+    // Zeros of g in [lo, hi]: boxes whose enclosure excludes 0 are dropped, the rest are halved
+    private List<Double> zeros(Node g) {
+        List<Double> out = new ArrayList<>();
+        double[] stack = new double[128];
+        int sp = 0;
+        stack[sp++] = lo;
+        stack[sp++] = hi;
+        int boxes = 0;
+        double clusterLo = Double.NaN, clusterHi = Double.NaN;
+        while (sp > 0) {
+            // Right halves are pushed first, so boxes come off in increasing x
+            double b = stack[--sp], a = stack[--sp];
+            if (++boxes > MAX_BOXES) return sampled(g);
+            Interval v = IntervalEvaluator.evaluate(g, a, b);
+            if (v.isEmpty() || v.lo > 0 || v.hi < 0) continue;
+            if (b - a <= width) {
+                if (!Double.isNaN(clusterHi) && a <= clusterHi) {
+                    clusterHi = b;
+                } else {
+                    confirm(g, clusterLo, clusterHi, out);
+                    clusterLo = a;
+                    clusterHi = b;
+                }
+                continue;
+            }
+            double m = 0.5 * (a + b);
+            if (sp + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[sp++] = m;
+            stack[sp++] = b;
+            stack[sp++] = a;
+            stack[sp++] = m;
+        }
+        confirm(g, clusterLo, clusterHi, out);
+        return out;
+    }
+
+    // A cluster is a zero if g changes sign across it or nearly vanishes in it
+    private void confirm(Node g, double a, double b, List<Double> out) {
+        if (Double.isNaN(a)) return;
+        double ga = g.eval(a), gb = g.eval(b), m = 0.5 * (a + b), gm = g.eval(m);
+        if ((finite(ga) && finite(gb) && ga * gb <= 0) || Math.abs(gm) <= 1e-9 || !finite(gm)) out.add(m);
+    }
+
+    // When the enclosures are too loose to prune, sign changes on a fine grid located by
+    // bisection. A grid on multiples of a power of two would sample a condition such as
+    // sin(pi*x) exactly at its zeros, where rounding leaves no sign change to find. A grid
+    // that finds a sign change in more than one cell in eight is likely skipping others
+    // between its samples, so it is made denser until the changes thin out.
+    private List<Double> sampled(Node g) {
+        int samples = FALLBACK_SAMPLES;
+        while (samples < MAX_FALLBACK_SAMPLES && signChanges(g, samples) > samples / 8) samples *= 8;
+
+        List<Double> out = new ArrayList<>();
+        double a = lo, ga = g.eval(a);
+        for (int i = 0; i <= samples && out.size() < MAX_CANDIDATES; i++) {
+            double b = sample(i, samples), gb = g.eval(b);
+            if (ga == 0) {
+                out.add(a);
+            } else if (finite(ga) && finite(gb) && ga * gb < 0) {
+                double l = a, r = b, gl = ga;
+                while (r - l > width) {
+                    double m = 0.5 * (l + r), gm = g.eval(m);
+                    if (gm == 0) {
+                        l = r = m;
+                        break;
+                    }
+                    if ((gm < 0) == (gl < 0)) {
+                        l = m;
+                        gl = gm;
+                    } else {
+                        r = m;
+                    }
+                }
+                out.add(0.5 * (l + r));
+            }
+            a = b;
+            ga = gb;
+        }
+        return out;
+    }
+
+    private int signChanges(Node g, int samples) {
+        int changes = 0;
+        double ga = g.eval(lo);
+        for (int i = 0; i <= samples; i++) {
+            double gb = g.eval(sample(i, samples));
+            if (ga == 0 || (finite(ga) && finite(gb) && ga * gb < 0)) changes++;
+            ga = gb;
+        }
+        return changes;
+    }
+
+    // The i-th point after lo of the fallback grid, hi for the last
+    private double sample(int i, int samples) {
+        return i == samples ? hi : lo + (i + FALLBACK_OFFSET) * (hi - lo) / samples;
+    }
+
+    private static boolean finite(double v) {
+        return !Double.isNaN(v) && !Double.isInfinite(v);
+    }
+
+    private static double[] unbox(List<Double> values) {
+        double[] out = new double[values.size()];
+        for (int i = 0; i < out.length; i++) out[i] = values.get(i);
+        return out;
+    }
+}
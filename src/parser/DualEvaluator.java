@@ -0,0 +1,180 @@
+package parser;
+
+/**
+ * Forward-mode automatic differentiation over a {@link Node} tree: every intermediate
+ * result carries its value and its derivative with respect to x, so one pass yields
+ * f(x) and f'(x) exactly, with no difference step and no symbolic rewriting. The tree
+ * is flattened once into postfix order and evaluated on a small value/slope stack.
+ */
+public final class DualEvaluator {
+    private static final double LN2 = Math.log(2), LN10 = Math.log(10);
+
+    private final Node[] program;
+    private final ThreadLocal<Stack> scratch;
+
+    public DualEvaluator(Node tree) {
+        this.program = new Node[tree.size()];
+        int[] count = {0};
+        int need = flatten(tree, count);
+        this.scratch = ThreadLocal.withInitial(() -> new Stack(need));
+    }
+
+    // Writes n's postfix order into program and returns the stack depth it needs
+    private int flatten(Node n, int[] count) {
+        int need = 1;
+        if (n.a != null) need = Math.max(need, flatten(n.a, count));
+        if (n.b != null) need = Math.max(need, 1 + flatten(n.b, count));
+        program[count[0]++] = n;
+        return need;
+    }
+
+    /** Writes f(x) to out[0] and f'(x) to out[1]. */
+    public void evaluate(double x, double[] out) {
+        Stack stack = scratch.get();
+        run(x, stack.v, stack.d, out);
+    }
+
+    /** values[i] = f(xs[i]) and slopes[i] = f'(xs[i]) for i in [from, to). */
+    public void evaluate(double[] xs, double[] values, double[] slopes, int from, int to) {
+        Stack stack = scratch.get();
+        double[] pair = new double[2];
+        for (int i = from; i < to; i++) {
+            run(xs[i], stack.v, stack.d, pair);
+            values[i] = pair[0];
+            slopes[i] = pair[1];
+        }
+    }
+
+    private void run(double x, double[] v, double[] d, double[] out) {
+        int sp = 0;
+        for (Node n : program) {
+            switch (n.kind) {
+                case CONST:
+                    v[sp] = n.value;
+                    d[sp++] = 0;
+                    break;
+                case VAR:
+                    v[sp] = x;
+                    d[sp++] = 1;
+                    break;
+                case NEG:
+                    v[sp - 1] = -v[sp - 1];
+                    d[sp - 1] = -d[sp - 1];
+                    break;
+                case CALL:
+                    if (n.b != null) {
+                        sp--;
+                        power(v, d, sp - 1, v[sp], d[sp]);
+                    } else {
+                        call(n.function, v, d, sp - 1);
+                    }
+                    break;
+                default: {
+                    sp--;
+                    double a = v[sp - 1], da = d[sp - 1];
+                    double b = v[sp], db = d[sp];
+                    int r = sp - 1;
+                    switch (n.kind) {
+                        case ADD:
+                            v[r] = a + b;
+                            d[r] = da + db;
+                            break;
+                        case SUB:
+                            v[r] = a - b;
+                            d[r] = da - db;
+                            break;
+                        case MUL:
+                            v[r] = a * b;
+                            d[r] = da * b + a * db;
+                            break;
+                        case DIV:
+                            v[r] = CompiledSupport.div(a, b);
+                            d[r] = db == 0 ? CompiledSupport.div(da, b) : (da * b - a * db) / (b * b);
+                            break;
+                        case MOD:
+                            v[r] = a % b;
+                            // a % b = a - trunc(a / b) * b
+                            d[r] = db == 0 ? da : da - (a - v[r]) / b * db;
+                            break;
+                        case POW:
+                            power(v, d, r, b, db);
+                            break;
+                        default:
+                            throw new IllegalStateException("Unknown node " + n.kind);
+                    }
+                }
+            }
+        }
+        out[0] = v[0];
+        out[1] = d[0];
+    }
+
+    // Replaces slot r, holding the base, with base ^ b
+    private static void power(double[] v, double[] d, int r, double b, double db) {
+        double a = v[r], da = d[r];
+        double p = Math.pow(a, b);
+        double slope;
+        if (db == 0) slope = da == 0 ? 0 : b * Math.pow(a, b - 1) * da;
+        else if (da == 0) slope = p * Math.log(a) * db;
+        else slope = p * (db * Math.log(a) + b * da / a);
+        v[r] = p;
+        d[r] = slope;
+    }
+
+    private static void call(Builtin f, double[] v, double[] d, int r) {
+        double a = v[r], da = d[r];
+        double value, slope;
+        switch (f) {
+            case SIN: value = Math.sin(a); slope = Math.cos(a) * da; break;
+            case COS: value = Math.cos(a); slope = -Math.sin(a) * da; break;
+            case TAN: {
+                double c = Math.cos(a);
+                value = Math.tan(a);
+                slope = da / (c * c);
+                break;
+            }
+            case COT: {
+                double s = Math.sin(a);
+                value = CompiledSupport.cot(a);
+                slope = -da / (s * s);
+                break;
+            }
+            case ASIN: value = Math.asin(a); slope = da / Math.sqrt(1 - a * a); break;
+            case ACOS: value = Math.acos(a); slope = -da / Math.sqrt(1 - a * a); break;
+            case ATAN: value = Math.atan(a); slope = da / (1 + a * a); break;
+            case SINH: value = Math.sinh(a); slope = Math.cosh(a) * da; break;
+            case COSH: value = Math.cosh(a); slope = Math.sinh(a) * da; break;
+            case TANH: {
+                double c = Math.cosh(a);
+                value = Math.tanh(a);
+                slope = da / (c * c);
+                break;
+            }
+            case LOG: value = Math.log(a); slope = da / a; break;
+            case LOG10: value = Math.log10(a); slope = da / (a * LN10); break;
+            case LOG2: value = CompiledSupport.log2(a); slope = da / (a * LN2); break;
+            case LOG1P: value = Math.log1p(a); slope = da / (1 + a); break;
+            case EXP: value = Math.exp(a); slope = value * da; break;
+            case EXPM1: value = Math.expm1(a); slope = Math.exp(a) * da; break;
+            case SQRT: value = Math.sqrt(a); slope = da / (2 * value); break;
+            case CBRT: value = Math.cbrt(a); slope = da / (3 * value * value); break;
+            case ABS: value = Math.abs(a); slope = Math.signum(a) * da; break;
+            case CEIL: value = Math.ceil(a); slope = 0; break;
+            case FLOOR: value = Math.floor(a); slope = 0; break;
+            case SIGNUM: value = Math.signum(a); slope = 0; break;
+            case STEP: value = CompiledSupport.step(a); slope = 0; break;
+            default: throw new IllegalStateException(f.name + " takes " + f.arity + " arguments");
+        }
+        v[r] = value;
+        d[r] = slope;
+    }
+
+    private static final class Stack {
+        final double[] v, d;
+
+        Stack(int depth) {
+            v = new double[depth];
+            d = new double[depth];
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+/**
+ * Turns a {@link Node} tree into a hidden class implementing DoubleUnaryOperator whose
+ * applyAsDouble is the expression as straight-line bytecode, so the JIT can inline and
+ * optimise it like hand-written Java. The generated method has no branches, which keeps
+ * the class file free of stack map frames. Subtrees that occur more than once (see
+ * {@link Optimizer#shared}) are computed where evaluation first reaches them, stored in
+ * a local and reloaded at every later occurrence. Parameters are read from a double[]
+ * field set by the constructor, so one class serves every set of parameter values.
+ */
+public class ExpressionCompiler {
+    private static final String CLASS_NAME = "parser/CompiledExpression";
+    private static final String INTERFACE = "java/util/function/DoubleUnaryOperator";
+
+    private static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC2_W = 0x14, DLOAD = 0x18, DLOAD_1 = 0x27, ALOAD_0 = 0x2a;
+    private static final int DSTORE = 0x39, DUP2 = 0x5c, WIDE = 0xc4;
+    private static final int ALOAD_1 = 0x2b, BIPUSH = 0x10, SIPUSH = 0x11, DALOAD = 0x31, GETFIELD = 0xb4, PUTFIELD = 0xb5;
+    private static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DREM = 0x73, DNEG = 0x77;
+    private static final int DRETURN = 0xaf, RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final List<String> parameters;
+    private int parameterField;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    // Local slot of each shared subtree; slot 0 is this and slots 1-2 hold x
+    private final Map<Node, Integer> locals = new HashMap<>();
+    private final Set<Node> stored = new HashSet<>();
+
+    private ExpressionCompiler(List<String> parameters) {
+        this.parameters = parameters;
+    }
+
+    /** Compiles a tree without parameters; throws IllegalStateException if the JVM refuses the class. */
+    public static DoubleUnaryOperator compile(Node node) {
+        return compile(node, List.of()).apply(new double[0]);
+    }
+
+    /**
+     * Compiles a tree whose parameters are the given names. The result builds an operator
+     * for an array of their values, in the same order; the array is read, never copied,
+     * so it must not change afterwards.
+     */
+    public static Function<double[], DoubleUnaryOperator> compile(Node node, List<String> parameters) {
+        List<String> names = List.copyOf(parameters);
+        byte[] bytes = new ExpressionCompiler(names).classFile(node);
+        Constructor<?> constructor;
+        try {
+            Class<?> type = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            constructor = type.getDeclaredConstructor(double[].class);
+            constructor.newInstance((Object) new double[names.size()]);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Could not load compiled expression for " + node, e);
+        }
+        return values -> {
+            if (values.length != names.size()) throw new IllegalArgumentException("Expected " + names.size() + " parameter values");
+            try {
+                return (DoubleUnaryOperator) constructor.newInstance((Object) values);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private byte[] classFile(Node node) {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int iface = pool.classRef(INTERFACE);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int codeName = pool.utf8("Code");
+        int fieldName = pool.utf8("p"), fieldType = pool.utf8("[D");
+        parameterField = pool.fieldRef(CLASS_NAME, "p", "[D");
+
+        byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                (byte) ALOAD_0, (byte) ALOAD_1, (byte) PUTFIELD, (byte) (parameterField >> 8), (byte) parameterField,
+                (byte) RETURN};
+        for (Node s : Optimizer.shared(node)) locals.put(s, 3 + 2 * locals.size());
+        int maxLocals = 3 + 2 * locals.size();
+        if (maxLocals > 65535) throw new IllegalStateException("Expression too large to compile");
+        emit(node);
+        code.write(DRETURN);
+        byte[] apply = code.toByteArray();
+        if (apply.length > 65535) throw new IllegalStateException("Expression too large to compile");
+
+        int initName = pool.utf8("<init>"), initType = pool.utf8("([D)V");
+        int applyName = pool.utf8("applyAsDouble"), applyType = pool.utf8("(D)D");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            pool.write(out);
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+            out.writeShort(1); // fields
+            out.writeShort(0x0012); // private final
+            out.writeShort(fieldName);
+            out.writeShort(fieldType);
+            out.writeShort(0); // attributes
+            out.writeShort(2); // methods
+            method(out, initName, initType, codeName, 2, 2, init);
+            // Storing a shared value duplicates it first, which needs two more slots at most
+            method(out, applyName, applyType, codeName, stack(node) + (locals.isEmpty() ? 0 : 2), maxLocals, apply);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void method(DataOutputStream out, int name, int type, int codeName,
+                               int maxStack, int maxLocals, byte[] body) throws IOException {
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private void emit(Node n) {
+        Integer slot = locals.get(n);
+        if (slot == null) {
+            compute(n);
+        } else if (stored.contains(n)) {
+            local(DLOAD, slot);
+        } else {
+            compute(n);
+            code.write(DUP2);
+            local(DSTORE, slot);
+            stored.add(n);
+        }
+    }
+
+    private void local(int opcode, int slot) {
+        if (slot > 255) {
+            code.write(WIDE);
+            op(opcode, slot);
+        } else {
+            code.write(opcode);
+            code.write(slot);
+        }
+    }
+
+    private void compute(Node n) {
+        switch (n.kind) {
+            case CONST:
+                if (Double.doubleToRawLongBits(n.value) == 0L) code.write(DCONST_0);
+                else if (n.value == 1.0) code.write(DCONST_1);
+                else op(LDC2_W, pool.doubleConst(n.value));
+                break;
+            case VAR:
+                code.write(DLOAD_1);
+                break;
+            case PARAM: {
+                int index = parameters.indexOf(n.name);
+                if (index < 0) throw new IllegalStateException("Unknown parameter " + n.name);
+                code.write(ALOAD_0);
+                op(GETFIELD, parameterField);
+                if (index < 128) {
+                    code.write(BIPUSH);
+                    code.write(index);
+                } else {
+                    op(SIPUSH, index);
+                }
+                code.write(DALOAD);
+                break;
+            }
+            case NEG:
+                emit(n.a);
+                code.write(DNEG);
+                break;
+            case ADD: binary(n, DADD); break;
+            case SUB: binary(n, DSUB); break;
+            case MUL: binary(n, DMUL); break;
+            case MOD: binary(n, DREM); break;
+            case DIV:
+                emit(n.a);
+                emit(n.b);
+                op(INVOKESTATIC, pool.methodRef(Builtin.SUPPORT, "div", "(DD)D"));
+                break;
+            case POW:
+                emit(n.a);
+                emit(n.b);
+                op(INVOKESTATIC, pool.methodRef("java/lang/Math", "pow", "(DD)D"));
+                break;
+            case CALL:
+                emit(n.a);
+                if (n.b != null) emit(n.b);
+                op(INVOKESTATIC, pool.methodRef(n.function.owner, n.function.method, n.function.descriptor()));
+                break;
+            default:
+                throw new IllegalStateException("Unknown node " + n.kind);
+        }
+    }
+
+    private void binary(Node n, int opcode) {
+        emit(n.a);
+        emit(n.b);
+        code.write(opcode);
+    }
+
+    private void op(int opcode, int index) {
+        code.write(opcode);
+        code.write(index >> 8);
+        code.write(index);
+    }
+
+    // Operand stack slots needed to evaluate n; every value is a two-slot double
+    private static int stack(Node n) {
+        switch (n.kind) {
+            case CONST:
+            case VAR:
+            case PARAM:
+                return 2;
+            case NEG:
+                return stack(n.a);
+            case CALL:
+                return n.b == null ? stack(n.a) : Math.max(stack(n.a), 2 + stack(n.b));
+            default:
+                return Math.max(stack(n.a), 2 + stack(n.b));
+        }
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String s) {
+            return entry("U" + s, 1, () -> {
+                out.writeByte(1);
+                out.writeUTF(s);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int methodRef(String owner, String name, String type) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name), typeIndex = utf8(type);
+            int nameAndType = entry("N" + name + ":" + type, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return entry("M" + owner + "." + name + type, 1, () -> {
+                out.writeByte(10);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int fieldRef(String owner, String name, String type) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name), typeIndex = utf8(type);
+            int nameAndType = entry("N" + name + ":" + type, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return entry("F" + owner + "." + name + type, 1, () -> {
+                out.writeByte(9);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int doubleConst(double v) {
+            long bits = Double.doubleToRawLongBits(v);
+            return entry("D" + bits, 2, () -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            });
+        }
+
+        private int entry(String key, int slots, Writer writer) {
+            Integer existing = entries.get(key);
+            if (existing != null) return existing;
+            if (count + slots > 65535) throw new IllegalStateException("Constant pool overflow");
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            int index = count;
+            count += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package parser;
+
+/**
+ * Recursive-descent reader turning an expression in x into a {@link Node} tree. It
+ * follows exp4j's grammar: unary minus binds looser than ^ but tighter than * and /,
+ * ^ is right associative, and juxtaposition ("2x", "3(x+1)") means multiplication.
+ * A single lowercase letter other than x and e ("a", "ω") is a free parameter; any other
+ * unknown name ("sinx", "xx", "X") is an error rather than a parameter, so a typo is
+ * reported instead of plotting as a constant.
+ * Anything outside that subset is rejected with an IllegalArgumentException so the
+ * caller can hand the text to exp4j instead.
+ */
+public class ExpressionReader {
+    // Trees deeper than this, by nesting or by long chains of operators, are rejected
+    // before the recursive passes over them (optimizer, compiler, interpreter) can
+    // overflow the stack; exp4j evaluates them without recursion
+    private static final int MAX_DEPTH = 256;
+
+    private final String text;
+    private int pos;
+    private int depth;
+
+    private ExpressionReader(String text) {
+        this.text = text;
+    }
+
+    public static Node read(String text) {
+        ExpressionReader reader = new ExpressionReader(text);
+        Node node = reader.expression();
+        reader.skipSpace();
+        if (reader.pos < text.length()) throw reader.error("Unexpected '" + text.charAt(reader.pos) + "'");
+        return node;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private Node expression() {
+        int entered = depth;
+        try {
+            Node node = term();
+            while (true) {
+                // Each operator adds a level to the left-leaning tree
+                if (accept('+')) node = Node.binary(Node.Kind.ADD, node, deeper().term());
+                else if (accept('-')) node = Node.binary(Node.Kind.SUB, node, deeper().term());
+                else return node;
+            }
+        } finally {
+            depth = entered;
+        }
+    }
+
+    // term := unary (('*' | '/' | '%') unary | unary)*
+    private Node term() {
+        int entered = depth;
+        try {
+            Node node = unary();
+            while (true) {
+                if (accept('*')) node = Node.binary(Node.Kind.MUL, node, deeper().unary());
+                else if (accept('/')) node = Node.binary(Node.Kind.DIV, node, deeper().unary());
+                else if (accept('%')) node = Node.binary(Node.Kind.MOD, node, deeper().unary());
+                else if (startsOperand()) node = Node.binary(Node.Kind.MUL, node, deeper().power());
+                else return node;
+            }
+        } finally {
+            depth = entered;
+        }
+    }
+
+    private ExpressionReader deeper() {
+        if (++depth > MAX_DEPTH) throw error("Expression nested too deeply");
+        return this;
+    }
+
+    // unary := ('-' | '+') unary | power
+    private Node unary() {
+        deeper();
+        try {
+            if (accept('-')) return Node.negate(unary());
+            if (accept('+')) return unary();
+            return power();
+        } finally {
+            depth--;
+        }
+    }
+
+    // power := primary ('^' unary)?
+    private Node power() {
+        Node base = primary();
+        if (accept('^')) return Node.binary(Node.Kind.POW, base, unary());
+        return base;
+    }
+
+    private Node primary() {
+        skipSpace();
+        if (pos >= text.length()) throw error("Unexpected end of expression");
+        char c = text.charAt(pos);
+        if (accept('(')) {
+            Node inner = expression();
+            expect(')');
+            return inner;
+        }
+        if (Character.isDigit(c) || c == '.') return number();
+        if (isNameStart(c)) return name();
+        throw error("Unexpected '" + c + "'");
+    }
+
+    private Node number() {
+        int start = pos;
+        while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) pos++;
+        // exp4j's handling of exponents and names glued to numbers is its own; leave those to it
+        if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) throw error("Exponent notation");
+        try {
+            return Node.constant(Double.parseDouble(text.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            throw error("Bad number '" + text.substring(start, pos) + "'");
+        }
+    }
+
+    private Node name() {
+        int start = pos;
+        while (pos < text.length() && isNamePart(text.charAt(pos))) pos++;
+        String name = text.substring(start, pos);
+
+        Builtin function = Builtin.byName(name);
+        if (function != null) {
+            expect('(');
+            Node first = expression();
+            if (function.arity == 1) {
+                expect(')');
+                return Node.call(function, first);
+            }
+            expect(',');
+            Node second = expression();
+            expect(')');
+            return Node.call(function, first, second);
+        }
+        switch (name) {
+            case "x": return Node.variable("x");
+            case "pi":
+            case "π": return Node.constant(Math.PI);
+            case "e": return Node.constant(Math.E);
+            case "φ": return Node.constant(1.61803398874);
+            default:
+                skipSpace();
+                if (pos < text.length() && text.charAt(pos) == '(') throw error("Unknown function '" + name + "'");
+                if (name.length() != 1 || !Character.isLowerCase(name.charAt(0))) throw error("Unknown name '" + name + "'");
+                return Node.parameter(name);
+        }
+    }
+
+    private boolean startsOperand() {
+        skipSpace();
+        if (pos >= text.length()) return false;
+        char c = text.charAt(pos);
+        return c == '(' || isNameStart(c) || Character.isDigit(c) || c == '.';
+    }
+
+    private boolean accept(char c) {
+        skipSpace();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) throw error("Expected '" + c + "'");
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in \"" + text + "\"");
+    }
+}
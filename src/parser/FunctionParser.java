@@ -4,7 +4,45 @@ import functions.*;
 import net.objecthunter.exp4j.Expression;
 import net.objecthunter.exp4j.ExpressionBuilder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
 public class FunctionParser {
+    // Set -Dplotter.compile=false to evaluate everything through exp4j
+    private static volatile boolean compilationEnabled =
+            Boolean.parseBoolean(System.getProperty("plotter.compile", "true"));
+    // Set -Dplotter.dumpOptimized=true to print each expression's optimized form to stderr
+    private static final boolean DUMP_OPTIMIZED = Boolean.getBoolean("plotter.dumpOptimized");
+
+    // Parsed and compiled expressions by normalized text; -Dplotter.parseCacheSize bounds the count
+    private static final LinkedHashMap<String, Compiled> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private static int cacheCapacity = Integer.getInteger("plotter.parseCacheSize", 256);
+    private static long cacheHits;
+    private static long cacheMisses;
+    private static long cacheEvictions;
+
+    private static final Pattern SPACE_AROUND_SYMBOL = Pattern.compile("\\s*([-+*/%^(),=])\\s*");
+    private static final Pattern SPACE = Pattern.compile("\\s+");
+
+    public static void setCompilationEnabled(boolean enabled) {
+        if (compilationEnabled == enabled) return;
+        compilationEnabled = enabled;
+        // Cached entries were built under the old setting
+        clearCache();
+    }
+
+    public static boolean isCompilationEnabled() {
+        return compilationEnabled;
+    }
+
     public static Function parse(String input) {
         input = input.trim();
 
@@ -17,15 +55,148 @@ public class FunctionParser {
         return new ParsedFunction(input);
     }
 
-    public static class ParsedFunction implements Function {
-        private final String exprString;
-        private Expression expression;
-        private java.awt.Color color = java.awt.Color.BLUE;
+    /** A function evaluating an already built tree, e.g. a derivative. */
+    public static ParsedFunction fromTree(Node tree) {
+        String expr = tree.toString();
+        return new ParsedFunction(expr, compiled(normalize(expr), () -> new Compiled(expr, tree)), null);
+    }
 
-        public ParsedFunction(String expr) {
-            this.exprString = expr;
+    /**
+     * The cache key for an expression: spacing around operators and parentheses is dropped
+     * and other runs of whitespace shrink to one space, so "x^2 + 1" and "x^2+1" share an entry.
+     */
+    static String normalize(String expr) {
+        String s = SPACE_AROUND_SYMBOL.matcher(expr.trim()).replaceAll("$1");
+        return SPACE.matcher(s).replaceAll(" ");
+    }
+
+    // Looks the expression up, building it outside the lock on a miss; a racing build of the same text keeps the first
+    private static Compiled compiled(String key, Supplier<Compiled> build) {
+        synchronized (FunctionParser.class) {
+            Compiled c = cache.get(key);
+            if (c != null) {
+                cacheHits++;
+                return c;
+            }
+            cacheMisses++;
+        }
+        Compiled built = build.get();
+        synchronized (FunctionParser.class) {
+            Compiled c = cache.putIfAbsent(key, built);
+            if (c != null) return c;
+            trimCache();
+            return built;
+        }
+    }
+
+    private static void trimCache() {
+        Iterator<Compiled> it = cache.values().iterator();
+        while (cache.size() > cacheCapacity && it.hasNext()) {
+            it.next();
+            it.remove();
+            cacheEvictions++;
+        }
+    }
+
+    public static synchronized void setCacheCapacity(int capacity) {
+        cacheCapacity = Math.max(0, capacity);
+        trimCache();
+    }
+
+    public static synchronized int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public static synchronized int getCacheSize() {
+        return cache.size();
+    }
+
+    public static synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    public static synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public static synchronized long getCacheEvictions() {
+        return cacheEvictions;
+    }
+
+    public static synchronized void clearCache() {
+        cache.clear();
+    }
+
+    public static synchronized void resetCacheStats() {
+        cacheHits = 0;
+        cacheMisses = 0;
+        cacheEvictions = 0;
+    }
+
+    /**
+     * Everything parsing and compiling produce for one expression. It holds no per-plot
+     * state, parameter values included, so the cache hands the same instance to every
+     * function with that text.
+     */
+    private static final class Compiled {
+        final String text;
+        final Node tree;
+        final List<String> parameters;
+        final Node optimized;
+        final java.util.function.Function<double[], DoubleUnaryOperator> factory;
+        final DoubleUnaryOperator operator;
+        final PolynomialFunction polynomial;
+        final ThreadLocal<Expression> expression;
+        volatile Compiled derivative;
+
+        Compiled(String expr) {
+            this(expr, read(expr));
+        }
+
+        Compiled(String expr, Node tree) {
+            this.text = expr;
+            this.tree = tree;
+            List<String> names = new ArrayList<>();
+            if (tree != null) tree.parameters(names);
+            this.parameters = Collections.unmodifiableList(names);
+            this.polynomial = tree != null ? polynomial(expr, tree) : null;
+            this.optimized = tree != null && polynomial == null ? Optimizer.optimize(tree) : null;
+            this.factory = optimized != null ? compile(optimized, parameters) : null;
+            this.operator = factory != null && parameters.isEmpty() ? factory.apply(new double[0]) : null;
+            if (DUMP_OPTIMIZED && optimized != null) System.err.println(expr + "\n" + Optimizer.dump(tree));
+            this.expression = tree == null ? interpreter(expr) : null;
+        }
+
+        // Expressions our reader understands run as generated bytecode; the rest stay on exp4j
+        private static Node read(String expr) {
+            try {
+                return ExpressionReader.read(expr);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        // Expanded polynomials evaluate by Horner and get exact root finding in the solvers
+        private static PolynomialFunction polynomial(String expr, Node tree) {
+            double[] c = PolynomialExtractor.coefficients(tree);
+            return c != null ? new PolynomialFunction(c, expr) : null;
+        }
+
+        private static java.util.function.Function<double[], DoubleUnaryOperator> compile(Node tree, List<String> parameters) {
+            if (!compilationEnabled) return null;
             try {
-                this.expression = new ExpressionBuilder(expr)
+                return ExpressionCompiler.compile(tree, parameters);
+            } catch (IllegalStateException | StackOverflowError e) {
+                // Too large or too deep for one method: the tree interpreter takes over
+                return null;
+            }
+        }
+
+        // exp4j keeps x in the Expression itself, so every thread evaluates its own copy
+        private static ThreadLocal<Expression> interpreter(String expr) {
+            Expression template;
+            try {
+                template = new ExpressionBuilder(expr)
                         .variables("x")
                         .function(new net.objecthunter.exp4j.function.Function("step", 1) {
                             @Override
@@ -37,27 +208,239 @@ public class FunctionParser {
                         .build();
             } catch (Exception e) {
                 System.err.println("Error parsing expression: " + expr);
+                return null;
+            }
+            return ThreadLocal.withInitial(() -> new Expression(template));
+        }
+    }
+
+    /**
+     * A function read from user text. Evaluation shares no mutable state: the tree and
+     * its compiled form are immutable, and the exp4j fallback gives each thread its own
+     * copy of the expression, so one instance can be evaluated from any number of threads.
+     * Parsing and compilation are cached by expression text; only the parameter values
+     * and the domains found for them are per instance.
+     * <p>
+     * Single lowercase letters other than x and e are parameters, {@link #DEFAULT_PARAMETER}
+     * until set. An instance's parameter values never change: {@link #withParameters}
+     * returns a new function sharing the compiled code, so anything cached for the old
+     * instance stays valid for it.
+     */
+    public static class ParsedFunction implements Differentiable, DualFunction, DomainFunction {
+        public static final double DEFAULT_PARAMETER = 1;
+        private static final int DOMAIN_CACHE_SIZE = 32;
+
+        private final String exprString;
+        private final Compiled c;
+        private final double[] values;
+        private final Node tree;
+        private final Node evalTree;
+        private final DoubleUnaryOperator operator;
+        private volatile DualEvaluator dual;
+        private volatile ParsedFunction derivative;
+        private final Map<String, Domain> domains = new LinkedHashMap<>(16, 0.75f, true);
+
+        public ParsedFunction(String expr) {
+            this(expr, compiled(normalize(expr), () -> new Compiled(expr)), null);
+        }
+
+        // values are in the order of c.parameters; null means all defaults
+        private ParsedFunction(String expr, Compiled c, double[] values) {
+            this.exprString = expr;
+            this.c = c;
+            if (values == null) {
+                values = new double[c.parameters.size()];
+                Arrays.fill(values, DEFAULT_PARAMETER);
+            }
+            this.values = values;
+            if (c.parameters.isEmpty()) {
+                this.tree = c.tree;
+                this.evalTree = c.optimized;
+                this.operator = c.operator;
+            } else {
+                this.tree = c.tree.bind(this::getParameter);
+                this.evalTree = c.optimized != null ? Optimizer.optimize(c.optimized.bind(this::getParameter)) : null;
+                this.operator = c.factory != null ? c.factory.apply(values) : null;
             }
         }
 
         @Override
         public double evaluate(double x) {
-            try {
-                expression.setVariable("x", x);
-                return expression.evaluate();
-            } catch (Exception e) {
-                return Double.NaN;
+            if (c.polynomial != null) return c.polynomial.evaluate(x);
+            if (operator != null) return operator.applyAsDouble(x);
+            if (evalTree != null) return evalTree.eval(x);
+            return c.expression != null ? interpret(c.expression.get(), x) : Double.NaN;
+        }
+
+        @Override
+        public void evaluate(double[] xs, double[] out, int from, int to) {
+            if (c.polynomial != null) {
+                c.polynomial.evaluate(xs, out, from, to);
+            } else if (operator != null) {
+                DoubleUnaryOperator op = operator;
+                for (int i = from; i < to; i++) out[i] = op.applyAsDouble(xs[i]);
+            } else if (evalTree != null) {
+                for (int i = from; i < to; i++) out[i] = evalTree.eval(xs[i]);
+            } else if (c.expression == null) {
+                Arrays.fill(out, from, to, Double.NaN);
+            } else {
+                Expression e = c.expression.get();
+                for (int i = from; i < to; i++) out[i] = interpret(e, xs[i]);
+            }
+        }
+
+        /**
+         * The parsed tree with this instance's parameter values in place, or null when the
+         * expression is only understood by exp4j.
+         */
+        public Node getTree() {
+            return tree;
+        }
+
+        /** False when neither our reader nor exp4j could read the text; such a function is NaN everywhere. */
+        public boolean isReadable() {
+            return c.tree != null || c.expression != null;
+        }
+
+        public boolean isCompiled() {
+            return c.polynomial == null && operator != null;
+        }
+
+        /** The expression as coefficients when it is written as an expanded polynomial, else null. */
+        public PolynomialFunction asPolynomial() {
+            return c.polynomial;
+        }
+
+        /** Names of the free parameters, in the order they first appear in the expression. */
+        public List<String> getParameters() {
+            return c.parameters;
+        }
+
+        public boolean dependsOn(String parameter) {
+            return c.parameters.contains(parameter);
+        }
+
+        public double getParameter(String parameter) {
+            int i = c.parameters.indexOf(parameter);
+            if (i < 0) throw new IllegalArgumentException(exprString + " has no parameter " + parameter);
+            return values[i];
+        }
+
+        /**
+         * This function with the given parameter values; names it does not use are ignored
+         * and parameters missing from the map keep their current value. Returns this
+         * instance when nothing it depends on changes.
+         */
+        public ParsedFunction withParameters(Map<String, Double> parameters) {
+            double[] next = values.clone();
+            for (int i = 0; i < next.length; i++) {
+                Double v = parameters.get(c.parameters.get(i));
+                if (v != null) next[i] = v;
+            }
+            if (Arrays.equals(next, values)) return this;
+            return new ParsedFunction(exprString, c, next);
+        }
+
+        /**
+         * Derived from the tree (see DomainAnalyzer). Results are computed for an aligned
+         * range at least twice as wide as asked and kept, so the columns and slabs of one
+         * view share a single analysis. Expressions only exp4j understands, and polynomials,
+         * report the whole range.
+         */
+        @Override
+        public Domain domain(double lo, double hi) {
+            if (tree == null || c.polynomial != null || !(hi > lo) || Double.isInfinite(hi - lo))
+                return Domain.everywhere(lo, hi);
+            int e = Math.getExponent(hi - lo) + 1;
+            double w = Math.scalb(1.0, e);
+            double k = Math.floor(lo / w);
+            String key = e + ":" + k;
+            Domain d;
+            synchronized (domains) {
+                d = domains.get(key);
+            }
+            if (d == null) {
+                d = DomainAnalyzer.analyze(tree, k * w, (k + 2) * w);
+                synchronized (domains) {
+                    domains.put(key, d);
+                    if (domains.size() > DOMAIN_CACHE_SIZE) domains.remove(domains.keySet().iterator().next());
+                }
             }
+            return d.restrict(lo, hi);
         }
 
+        /**
+         * Value and slope by forward-mode differentiation of the tree. Expressions only exp4j
+         * understands have no tree, so their slope falls back to a central difference.
+         */
         @Override
-        public void setColor(java.awt.Color color) {
-            this.color = color;
+        public void evaluateDual(double x, double[] out) {
+            if (c.tree == null) {
+                double h = 1e-5;
+                out[0] = evaluate(x);
+                out[1] = (evaluate(x + h) - evaluate(x - h)) / (2 * h);
+                return;
+            }
+            if (c.polynomial != null) {
+                c.polynomial.evaluateDual(x, out);
+                return;
+            }
+            dualEvaluator().evaluate(x, out);
         }
 
         @Override
-        public java.awt.Color getColor() {
-            return color;
+        public void evaluateDual(double[] xs, double[] values, double[] slopes, int from, int to) {
+            if (c.tree == null) {
+                DualFunction.super.evaluateDual(xs, values, slopes, from, to);
+                return;
+            }
+            if (c.polynomial != null) {
+                c.polynomial.evaluateDual(xs, values, slopes, from, to);
+                return;
+            }
+            dualEvaluator().evaluate(xs, values, slopes, from, to);
+        }
+
+        private DualEvaluator dualEvaluator() {
+            DualEvaluator d = dual;
+            if (d == null) {
+                d = new DualEvaluator(evalTree);
+                dual = d;
+            }
+            return d;
+        }
+
+        /**
+         * Symbolic f', built on first use and shared by every instance of this expression;
+         * it takes this instance's parameter values. Null for expressions only exp4j understands.
+         */
+        @Override
+        public ParsedFunction derivative() {
+            if (c.tree == null) return null;
+            ParsedFunction d = derivative;
+            if (d == null) {
+                Compiled dc = c.derivative;
+                if (dc == null) {
+                    Node dt = Differentiator.differentiate(c.tree);
+                    String text = dt.toString();
+                    dc = compiled(normalize(text), () -> new Compiled(text, dt));
+                    c.derivative = dc;
+                }
+                double[] dv = new double[dc.parameters.size()];
+                for (int i = 0; i < dv.length; i++) dv[i] = getParameter(dc.parameters.get(i));
+                d = new ParsedFunction(dc.text, dc, dv);
+                derivative = d;
+            }
+            return d;
+        }
+
+        private static double interpret(Expression e, double x) {
+            try {
+                e.setVariable("x", x);
+                return e.evaluate();
+            } catch (Exception ex) {
+                return Double.NaN;
+            }
         }
 
         @Override
@@ -65,4 +448,4 @@ public class FunctionParser {
             return exprString;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,215 @@
+package parser;
+
+/**
+ * Closed interval [lo, hi] of doubles for interval arithmetic. Every operation rounds
+ * outward, so the result always encloses the exact set of values; EMPTY stands for
+ * "nowhere defined" (e.g. the log of a negative interval).
+ */
+public final class Interval {
+    public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN);
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    public final double lo;
+    public final double hi;
+
+    private Interval(double lo, double hi) {
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    public static Interval of(double lo, double hi) {
+        if (Double.isNaN(lo) || Double.isNaN(hi) || lo > hi) return EMPTY;
+        return new Interval(lo, hi);
+    }
+
+    public static Interval point(double v) {
+        return of(v, v);
+    }
+
+    // Widens by ulps in both directions to cover rounding in the operation that produced it
+    static Interval rounded(double lo, double hi, int ulps) {
+        if (Double.isNaN(lo) || Double.isNaN(hi)) return ENTIRE;
+        for (int i = 0; i < ulps; i++) {
+            lo = Math.nextDown(lo);
+            hi = Math.nextUp(hi);
+        }
+        return of(lo, hi);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    public boolean contains(double v) {
+        return !isEmpty() && lo <= v && v <= hi;
+    }
+
+    public double width() {
+        return hi - lo;
+    }
+
+    Interval negate() {
+        return isEmpty() ? EMPTY : of(-hi, -lo);
+    }
+
+    Interval add(Interval o) {
+        if (isEmpty() || o.isEmpty()) return EMPTY;
+        return rounded(lo + o.lo, hi + o.hi, 1);
+    }
+
+    Interval sub(Interval o) {
+        if (isEmpty() || o.isEmpty()) return EMPTY;
+        return rounded(lo - o.hi, hi - o.lo, 1);
+    }
+
+    Interval mul(Interval o) {
+        if (isEmpty() || o.isEmpty()) return EMPTY;
+        double a = lo * o.lo, b = lo * o.hi, c = hi * o.lo, d = hi * o.hi;
+        // 0 * infinity: some product is undefined, so give up on a tight bound
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d)) return ENTIRE;
+        return rounded(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)), 1);
+    }
+
+    Interval div(Interval o) {
+        if (isEmpty() || o.isEmpty()) return EMPTY;
+        if (o.lo == 0 && o.hi == 0) return EMPTY;
+        if (o.lo <= 0 && o.hi >= 0) return ENTIRE;
+        return mul(rounded(1 / o.hi, 1 / o.lo, 1));
+    }
+
+    // Truncated remainder: same sign as the dividend and smaller in size than the divisor
+    Interval mod(Interval o) {
+        if (isEmpty() || o.isEmpty()) return EMPTY;
+        double m = Math.max(Math.abs(o.lo), Math.abs(o.hi));
+        if (o.lo > 0 || o.hi < 0) {
+            double n = Math.min(Math.abs(o.lo), Math.abs(o.hi));
+            // Small enough to pass through unchanged
+            if (lo > -n && hi < n) return this;
+        }
+        if (lo >= 0) return of(0, Math.min(hi, m));
+        if (hi <= 0) return of(Math.max(lo, -m), 0);
+        return of(Math.max(lo, -m), Math.min(hi, m));
+    }
+
+    Interval pow(Interval e) {
+        if (isEmpty() || e.isEmpty()) return EMPTY;
+        if (e.lo == e.hi) return pow(e.lo);
+        if (lo == hi && lo > 0) {
+            // c ^ e is monotone in e
+            double a = Math.pow(lo, e.lo), b = Math.pow(lo, e.hi);
+            return rounded(Math.min(a, b), Math.max(a, b), 2);
+        }
+        if (lo < 0) return ENTIRE;
+        // u ^ v = exp(v * log u) on u > 0
+        return e.mul(monotone(Builtin.LOG, 0, Double.POSITIVE_INFINITY)).monotone(Builtin.EXP,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    private Interval pow(double p) {
+        if (p == 0) return point(1);
+        if (p == Math.rint(p) && Math.abs(p) < 1L << 53) {
+            boolean even = p % 2 == 0;
+            if (p > 0) {
+                if (!even || lo >= 0) return rounded(Math.pow(lo, p), Math.pow(hi, p), 2);
+                if (hi <= 0) return rounded(Math.pow(hi, p), Math.pow(lo, p), 2);
+                return rounded(0, Math.max(Math.pow(lo, p), Math.pow(hi, p)), 2);
+            }
+            if (lo <= 0 && hi >= 0) return ENTIRE;
+            double a = Math.pow(lo, p), b = Math.pow(hi, p);
+            return rounded(Math.min(a, b), Math.max(a, b), 2);
+        }
+        // Fractional powers are only defined for a non-negative base
+        if (hi < 0) return EMPTY;
+        double l = Math.max(lo, 0);
+        double a = Math.pow(l, p), b = Math.pow(hi, p);
+        return rounded(Math.min(a, b), Math.max(a, b), 2);
+    }
+
+    Interval apply(Builtin f) {
+        if (isEmpty()) return EMPTY;
+        double inf = Double.POSITIVE_INFINITY;
+        switch (f) {
+            case SIN: return periodic(0.5 * Math.PI);
+            case COS: return periodic(0);
+            case TAN: return tangent(false);
+            case COT: return tangent(true);
+            case ASIN: return monotone(f, -1, 1);
+            case ACOS: return monotoneDecreasing(f, -1, 1);
+            case ATAN: return monotone(f, -inf, inf);
+            case SINH: return monotone(f, -inf, inf);
+            case COSH: {
+                if (lo >= 0) return monotone(f, 0, inf);
+                if (hi <= 0) return negate().monotone(f, 0, inf);
+                return rounded(1, Math.max(Math.cosh(lo), Math.cosh(hi)), 2);
+            }
+            case TANH: return monotone(f, -inf, inf);
+            case LOG:
+            case LOG10:
+            case LOG2:
+                return monotone(f, 0, inf);
+            case LOG1P: return monotone(f, -1, inf);
+            case EXP:
+            case EXPM1:
+                return monotone(f, -inf, inf);
+            case SQRT: return monotone(f, 0, inf);
+            case CBRT:
+            case CEIL:
+            case FLOOR:
+            case SIGNUM:
+            case STEP:
+                return monotone(f, -inf, inf);
+            case ABS: {
+                if (lo >= 0) return this;
+                if (hi <= 0) return negate();
+                return of(0, Math.max(-lo, hi));
+            }
+            default:
+                throw new IllegalStateException(f.name + " takes " + f.arity + " arguments");
+        }
+    }
+
+    // An increasing function defined on [domainLo, domainHi]
+    private Interval monotone(Builtin f, double domainLo, double domainHi) {
+        double l = Math.max(lo, domainLo), h = Math.min(hi, domainHi);
+        if (l > h) return EMPTY;
+        return rounded(f.apply(l), f.apply(h), 2);
+    }
+
+    private Interval monotoneDecreasing(Builtin f, double domainLo, double domainHi) {
+        double l = Math.max(lo, domainLo), h = Math.min(hi, domainHi);
+        if (l > h) return EMPTY;
+        return rounded(f.apply(h), f.apply(l), 2);
+    }
+
+    // sin or cos: peaks at peak + 2k pi, troughs half a period later
+    private Interval periodic(double peak) {
+        if (Double.isInfinite(lo) || Double.isInfinite(hi) || hi - lo >= 2 * Math.PI) return of(-1, 1);
+        double a = peak == 0 ? Math.cos(lo) : Math.sin(lo);
+        double b = peak == 0 ? Math.cos(hi) : Math.sin(hi);
+        double min = Math.min(a, b), max = Math.max(a, b);
+        if (containsPhase(peak)) max = 1;
+        if (containsPhase(peak + Math.PI)) min = -1;
+        return Interval.of(Math.max(-1, Math.nextDown(Math.nextDown(min))), Math.min(1, Math.nextUp(Math.nextUp(max))));
+    }
+
+    // Whether [lo, hi] contains phase + 2k pi for some k, with a little slack for rounding
+    private boolean containsPhase(double phase) {
+        double k = Math.ceil((lo - phase) / (2 * Math.PI) - 1e-9);
+        return phase + 2 * Math.PI * k <= hi + 1e-9;
+    }
+
+    // tan has poles at pi/2 + k pi, cot at k pi; between poles tan increases and cot decreases
+    private Interval tangent(boolean cot) {
+        if (Double.isInfinite(lo) || Double.isInfinite(hi) || hi - lo >= Math.PI) return ENTIRE;
+        double offset = cot ? 0 : 0.5 * Math.PI;
+        double k = Math.ceil((lo - offset) / Math.PI - 1e-9);
+        if (offset + Math.PI * k <= hi + 1e-9) return ENTIRE;
+        if (cot) return rounded(CompiledSupport.cot(hi), CompiledSupport.cot(lo), 2);
+        return rounded(Math.tan(lo), Math.tan(hi), 2);
+    }
+
+    @Override
+    public String toString() {
+        return isEmpty() ? "[empty]" : "[" + lo + ", " + hi + "]";
+    }
+}
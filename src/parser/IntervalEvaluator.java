@@ -0,0 +1,46 @@
+package parser;
+
+/**
+ * Evaluates a {@link Node} tree over an interval of x, giving an enclosure of every
+ * value the expression takes there. The enclosure may be wider than the true range
+ * (each occurrence of x is treated independently) but never narrower, so an
+ * enclosure that excludes 0 proves the expression has no root in that interval.
+ */
+public class IntervalEvaluator {
+    private IntervalEvaluator() {
+    }
+
+    public static Interval evaluate(Node n, double lo, double hi) {
+        return evaluate(n, Interval.of(lo, hi));
+    }
+
+    public static Interval evaluate(Node n, Interval x) {
+        switch (n.kind) {
+            case CONST:
+                return Interval.point(n.value);
+            case VAR:
+                return x;
+            case NEG:
+                return evaluate(n.a, x).negate();
+            case ADD:
+                return evaluate(n.a, x).add(evaluate(n.b, x));
+            case SUB:
+                return evaluate(n.a, x).sub(evaluate(n.b, x));
+            case MUL:
+                // x * x would otherwise be treated as two independent factors
+                if (n.a.equals(n.b)) return evaluate(n.a, x).pow(Interval.point(2));
+                return evaluate(n.a, x).mul(evaluate(n.b, x));
+            case DIV:
+                return evaluate(n.a, x).div(evaluate(n.b, x));
+            case MOD:
+                return evaluate(n.a, x).mod(evaluate(n.b, x));
+            case POW:
+                return evaluate(n.a, x).pow(evaluate(n.b, x));
+            case CALL:
+                if (n.b != null) return evaluate(n.a, x).pow(evaluate(n.b, x));
+                return evaluate(n.a, x).apply(n.function);
+            default:
+                throw new IllegalStateException("Unknown node " + n.kind);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package parser;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Immutable expression tree produced by {@link ExpressionReader}. Nodes compare
+ * structurally, so equal subtrees can be recognised wherever they occur.
+ */
+public final class Node {
+    public enum Kind { CONST, VAR, PARAM, NEG, ADD, SUB, MUL, DIV, MOD, POW, CALL }
+
+    public final Kind kind;
+    public final double value;       // CONST
+    public final String name;        // VAR, PARAM
+    public final Builtin function;   // CALL
+    public final Node a;             // operand, left operand or first argument
+    public final Node b;             // right operand or second argument
+    private final int hash;
+
+    private Node(Kind kind, double value, String name, Builtin function, Node a, Node b) {
+        this.kind = kind;
+        this.value = value;
+        this.name = name;
+        this.function = function;
+        this.a = a;
+        this.b = b;
+        this.hash = Objects.hash(kind, Double.doubleToLongBits(value), name, function, a, b);
+    }
+
+    public static Node constant(double value) {
+        return new Node(Kind.CONST, value, null, null, null, null);
+    }
+
+    public static Node variable(String name) {
+        return new Node(Kind.VAR, 0, name, null, null, null);
+    }
+
+    /** A free parameter such as the a in a*sin(x); {@link #bind} gives it a value. */
+    public static Node parameter(String name) {
+        return new Node(Kind.PARAM, 0, name, null, null, null);
+    }
+
+    public static Node negate(Node a) {
+        return new Node(Kind.NEG, 0, null, null, a, null);
+    }
+
+    public static Node binary(Kind kind, Node a, Node b) {
+        return new Node(kind, 0, null, null, a, b);
+    }
+
+    public static Node call(Builtin function, Node a) {
+        return new Node(Kind.CALL, 0, null, function, a, null);
+    }
+
+    public static Node call(Builtin function, Node a, Node b) {
+        return new Node(Kind.CALL, 0, null, function, a, b);
+    }
+
+    public boolean isConstant() {
+        return kind == Kind.CONST;
+    }
+
+    public boolean isConstant(double v) {
+        return kind == Kind.CONST && value == v;
+    }
+
+    public double eval(double x) {
+        switch (kind) {
+            case CONST: return value;
+            case VAR: return x;
+            case PARAM: throw new IllegalStateException("Unbound parameter " + name);
+            case NEG: return -a.eval(x);
+            case ADD: return a.eval(x) + b.eval(x);
+            case SUB: return a.eval(x) - b.eval(x);
+            case MUL: return a.eval(x) * b.eval(x);
+            case DIV: return CompiledSupport.div(a.eval(x), b.eval(x));
+            case MOD: return a.eval(x) % b.eval(x);
+            case POW: return Math.pow(a.eval(x), b.eval(x));
+            case CALL: return function.arity == 1 ? function.apply(a.eval(x)) : function.apply(a.eval(x), b.eval(x));
+            default: throw new IllegalStateException("Unknown node " + kind);
+        }
+    }
+
+    /** Adds the names of the parameters in this tree to out, in the order they are first met. */
+    public void parameters(Collection<String> out) {
+        if (kind == Kind.PARAM && !out.contains(name)) out.add(name);
+        if (a != null) a.parameters(out);
+        if (b != null) b.parameters(out);
+    }
+
+    /** Whether x occurs anywhere in this tree; a tree without it is constant in x. */
+    public boolean dependsOnX() {
+        return kind == Kind.VAR || (a != null && a.dependsOnX()) || (b != null && b.dependsOnX());
+    }
+
+    /** This tree with every parameter replaced by the constant values gives for its name. */
+    public Node bind(ToDoubleFunction<String> values) {
+        switch (kind) {
+            case CONST:
+            case VAR:
+                return this;
+            case PARAM:
+                return constant(values.applyAsDouble(name));
+            default: {
+                Node ba = a.bind(values);
+                Node bb = b != null ? b.bind(values) : null;
+                if (ba == a && bb == b) return this;
+                return new Node(kind, value, name, function, ba, bb);
+            }
+        }
+    }
+
+    /** Number of nodes in the tree, counting shared subtrees once per occurrence. */
+    public int size() {
+        return 1 + (a != null ? a.size() : 0) + (b != null ? b.size() : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Node)) return false;
+        Node n = (Node) o;
+        return hash == n.hash && kind == n.kind
+                && Double.doubleToLongBits(value) == Double.doubleToLongBits(n.value)
+                && Objects.equals(name, n.name) && function == n.function
+                && Objects.equals(a, n.a) && Objects.equals(b, n.b);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CONST: return format(value);
+            case VAR:
+            case PARAM:
+                return name;
+            case NEG: return "-" + wrap(a);
+            case ADD: return a + " + " + b;
+            case SUB: return a + " - " + wrap(b, Kind.ADD, Kind.SUB);
+            case MUL: return wrap(a, Kind.ADD, Kind.SUB) + "*" + wrap(b, Kind.ADD, Kind.SUB, Kind.DIV, Kind.MOD);
+            case DIV: return wrap(a, Kind.ADD, Kind.SUB) + "/" + wrap(b, Kind.ADD, Kind.SUB, Kind.MUL, Kind.DIV, Kind.MOD);
+            case MOD: return wrap(a, Kind.ADD, Kind.SUB) + "%" + wrap(b, Kind.ADD, Kind.SUB, Kind.MUL, Kind.DIV, Kind.MOD);
+            case POW: return wrap(a) + "^" + wrap(b);
+            case CALL: return function.name + "(" + a + (b != null ? ", " + b : "") + ")";
+            default: return kind.name();
+        }
+    }
+
+    // Operands that are not atoms get parentheses, or only those of the listed kinds
+    private static String wrap(Node n, Kind... kinds) {
+        boolean atom = n.kind == Kind.VAR || n.kind == Kind.PARAM || n.kind == Kind.CALL || (n.kind == Kind.CONST && n.value >= 0);
+        if (atom) return n.toString();
+        if (kinds.length > 0 && n.kind != Kind.NEG && n.kind != Kind.POW && n.kind != Kind.CONST) {
+            for (Kind k : kinds) {
+                if (n.kind == k) return "(" + n + ")";
+            }
+            return n.toString();
+        }
+        return "(" + n + ")";
+    }
+
+    private static String format(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
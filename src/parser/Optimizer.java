@@ -0,0 +1,143 @@
+package parser;
+
+import parser.Node.Kind;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a tree into a cheaper one that evaluates to the same doubles: constant
+ * subtrees are folded, exact identities (x * 1, x / 1, x - 0, --x) are dropped and
+ * small integer powers become multiplication chains. Unlike {@link Simplifier} it never
+ * reorders arithmetic or drops a NaN, so compiled results stay bit-for-bit comparable
+ * with the tree as typed, apart from the rounding of the replaced pow calls.
+ * <p>
+ * The chains are built so their repeated factors are equal subtrees, and
+ * {@link #shared} picks those up together with every other repeated subterm; the
+ * compiler evaluates each shared subtree once and keeps it in a local.
+ */
+public final class Optimizer {
+    // Largest exponent turned into multiplications; x^32 takes six
+    static final int MAX_CHAIN_EXPONENT = 32;
+
+    private Optimizer() {
+    }
+
+    public static Node optimize(Node n) {
+        switch (n.kind) {
+            case CONST:
+            case VAR:
+            case PARAM:
+                return n;
+            case NEG: {
+                Node a = optimize(n.a);
+                if (a.isConstant()) return Node.constant(-a.value);
+                if (a.kind == Kind.NEG) return a.a;
+                return Node.negate(a);
+            }
+            case CALL: {
+                Node a = optimize(n.a);
+                Node b = n.b != null ? optimize(n.b) : null;
+                if (a.isConstant() && (b == null || b.isConstant()))
+                    return Node.constant(b == null ? n.function.apply(a.value) : n.function.apply(a.value, b.value));
+                if (n.function == Builtin.POW) return power(a, b);
+                return b == null ? Node.call(n.function, a) : Node.call(n.function, a, b);
+            }
+            default: {
+                Node a = optimize(n.a), b = optimize(n.b);
+                if (a.isConstant() && b.isConstant()) return Node.constant(Node.binary(n.kind, a, b).eval(0));
+                switch (n.kind) {
+                    case SUB:
+                        if (b.isConstant(0)) return a;
+                        break;
+                    case MUL:
+                        if (b.isConstant(1)) return a;
+                        if (a.isConstant(1)) return b;
+                        break;
+                    case DIV:
+                        if (b.isConstant(1)) return a;
+                        break;
+                    case POW:
+                        return power(a, b);
+                    default:
+                        break;
+                }
+                return Node.binary(n.kind, a, b);
+            }
+        }
+    }
+
+    // Positive integer powers by square-and-multiply: x^5 = (x*x)*(x*x)*x
+    private static Node power(Node a, Node b) {
+        if (b.isConstant() && b.value == Math.rint(b.value) && b.value >= 1 && b.value <= MAX_CHAIN_EXPONENT)
+            return chain(a, (int) b.value);
+        return Node.binary(Kind.POW, a, b);
+    }
+
+    private static Node chain(Node a, int p) {
+        if (p == 1) return a;
+        Node half = chain(a, p / 2);
+        Node square = Node.binary(Kind.MUL, half, half);
+        return p % 2 == 0 ? square : Node.binary(Kind.MUL, square, a);
+    }
+
+    /**
+     * Subtrees worth keeping in a local: those that occur more than once outside an
+     * already shared parent, in the order evaluation first reaches them. Leaves are
+     * never shared since loading them is as cheap as loading a local.
+     */
+    public static List<Node> shared(Node root) {
+        Map<Node, Integer> counts = new LinkedHashMap<>();
+        count(root, counts);
+        List<Node> out = new ArrayList<>();
+        for (Map.Entry<Node, Integer> e : counts.entrySet()) {
+            if (e.getValue() > 1) out.add(e.getKey());
+        }
+        return out;
+    }
+
+    // Children are counted only on the first occurrence: later ones reuse the parent whole
+    private static void count(Node n, Map<Node, Integer> counts) {
+        if (n.kind == Kind.CONST || n.kind == Kind.VAR || n.kind == Kind.PARAM) return;
+        Integer seen = counts.get(n);
+        if (seen != null) {
+            counts.put(n, seen + 1);
+            return;
+        }
+        if (n.a != null) count(n.a, counts);
+        if (n.b != null) count(n.b, counts);
+        // Insert after the children so the order is the order evaluation completes them
+        counts.put(n, 1);
+    }
+
+    /**
+     * The optimized form as a list of assignments, one per shared subtree, followed by
+     * the result, e.g. "t0 = sin(x)" ... "= t0*t0 + t0*cos(x) + 6*x".
+     */
+    public static String dump(Node tree) {
+        Node root = optimize(tree);
+        List<Node> shared = shared(root);
+        Map<Node, String> names = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (Node s : shared) {
+            String name = "t" + names.size();
+            sb.append(name).append(" = ").append(substitute(s, names)).append('\n');
+            names.put(s, name);
+        }
+        return sb.append("= ").append(substitute(root, names)).toString();
+    }
+
+    // n with every subtree named so far replaced by its temporary
+    private static Node substitute(Node n, Map<Node, String> names) {
+        String name = names.get(n);
+        if (name != null) return Node.variable(name);
+        if (n.a == null) return n;
+        Node a = substitute(n.a, names);
+        Node b = n.b != null ? substitute(n.b, names) : null;
+        if (n.kind == Kind.NEG) return Node.negate(a);
+        if (n.kind == Kind.CALL) return b == null ? Node.call(n.function, a) : Node.call(n.function, a, b);
+        return Node.binary(n.kind, a, b);
+    }
+}
@@ -0,0 +1,86 @@
+package parser;
+
+import parser.Node.Kind;
+
+import java.util.Arrays;
+
+/**
+ * Recognizes trees written out as a polynomial in expanded form, a sum of terms
+ * c * x ^ k such as 3x^4 - x / 2 + 1. Products or powers of sums are deliberately not
+ * expanded: multiplying out (x - 1) ^ 10 turns a well-conditioned expression into
+ * coefficients whose rounding errors swamp the values near the root.
+ */
+public class PolynomialExtractor {
+    public static final int MAX_DEGREE = 100;
+
+    private PolynomialExtractor() {
+    }
+
+    /** Coefficients, constant first, or null when the tree is not an expanded polynomial. */
+    public static double[] coefficients(Node n) {
+        switch (n.kind) {
+            case ADD:
+            case SUB: {
+                double[] a = coefficients(n.a), b = coefficients(n.b);
+                if (a == null || b == null) return null;
+                double[] c = Arrays.copyOf(a, Math.max(a.length, b.length));
+                double sign = n.kind == Kind.ADD ? 1 : -1;
+                for (int i = 0; i < b.length; i++) c[i] += sign * b[i];
+                return c;
+            }
+            case NEG: {
+                double[] a = coefficients(n.a);
+                if (a == null) return null;
+                for (int i = 0; i < a.length; i++) a[i] = -a[i];
+                return a;
+            }
+            default:
+                return term(n);
+        }
+    }
+
+    // A single c * x ^ k, however its constant factors are arranged
+    private static double[] term(Node n) {
+        switch (n.kind) {
+            case CONST:
+                return Double.isFinite(n.value) ? new double[]{n.value} : null;
+            case VAR:
+                return new double[]{0, 1};
+            case NEG: {
+                double[] a = term(n.a);
+                if (a == null) return null;
+                a[a.length - 1] = -a[a.length - 1];
+                return a;
+            }
+            case MUL: {
+                // The product of two monomials is still one
+                double[] a = term(n.a), b = term(n.b);
+                if (a == null || b == null || a.length + b.length - 2 > MAX_DEGREE) return null;
+                double[] c = new double[a.length + b.length - 1];
+                c[c.length - 1] = a[a.length - 1] * b[b.length - 1];
+                return c;
+            }
+            case DIV: {
+                double[] a = term(n.a);
+                if (a == null || !n.b.isConstant() || n.b.value == 0 || !Double.isFinite(n.b.value)) return null;
+                a[a.length - 1] /= n.b.value;
+                return a;
+            }
+            case POW:
+                return power(n.a, n.b);
+            case CALL:
+                return n.function == Builtin.POW ? power(n.a, n.b) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static double[] power(Node base, Node exponent) {
+        if (base.kind != Kind.VAR || !exponent.isConstant()) return null;
+        double k = exponent.value;
+        if (k < 0 || k > MAX_DEGREE || k != Math.rint(k)) return null;
+        double[] c = new double[(int) k + 1];
+        c[(int) k] = 1;
+        return c;
+    }
+}
@@ -0,0 +1,100 @@
+package parser;
+
+import parser.Node.Kind;
+
+/**
+ * Algebraic clean-up of a {@link Node} tree: folds constant subtrees and removes the
+ * identities (x + 0, 1 * x, x ^ 1, double negation, ...) that mechanical rewriting such
+ * as differentiation leaves behind. The result evaluates the same as the input
+ * wherever the input is finite.
+ */
+public class Simplifier {
+    private Simplifier() {
+    }
+
+    public static Node simplify(Node n) {
+        switch (n.kind) {
+            case CONST:
+            case VAR:
+            case PARAM:
+                return n;
+            case NEG:
+                return negate(simplify(n.a));
+            case CALL: {
+                Node a = simplify(n.a);
+                Node b = n.b != null ? simplify(n.b) : null;
+                if (n.function == Builtin.POW) return power(a, b);
+                Node call = b == null ? Node.call(n.function, a) : Node.call(n.function, a, b);
+                return a.isConstant() && (b == null || b.isConstant()) ? Node.constant(call.eval(0)) : call;
+            }
+            default:
+                return binary(n.kind, simplify(n.a), simplify(n.b));
+        }
+    }
+
+    private static Node binary(Kind kind, Node a, Node b) {
+        if (a.isConstant() && b.isConstant()) return Node.constant(Node.binary(kind, a, b).eval(0));
+        switch (kind) {
+            case ADD:
+                if (a.isConstant(0)) return b;
+                if (b.isConstant(0)) return a;
+                if (b.kind == Kind.NEG) return binary(Kind.SUB, a, b.a);
+                if (a.kind == Kind.NEG) return binary(Kind.SUB, b, a.a);
+                if (a.equals(b)) return binary(Kind.MUL, Node.constant(2), a);
+                return Node.binary(kind, a, b);
+            case SUB:
+                if (b.isConstant(0)) return a;
+                if (a.isConstant(0)) return negate(b);
+                if (b.kind == Kind.NEG) return binary(Kind.ADD, a, b.a);
+                if (a.equals(b)) return Node.constant(0);
+                return Node.binary(kind, a, b);
+            case MUL:
+                if (a.isConstant(0) || b.isConstant(0)) return Node.constant(0);
+                if (a.isConstant(1)) return b;
+                if (b.isConstant(1)) return a;
+                if (a.isConstant(-1)) return negate(b);
+                if (b.isConstant(-1)) return negate(a);
+                // Keep constants on the left so they meet and fold
+                if (b.isConstant()) return binary(Kind.MUL, b, a);
+                if (a.kind == Kind.NEG) return negate(binary(Kind.MUL, a.a, b));
+                if (b.kind == Kind.NEG) return negate(binary(Kind.MUL, a, b.a));
+                if (a.isConstant() && b.kind == Kind.MUL && b.a.isConstant())
+                    return binary(Kind.MUL, Node.constant(a.value * b.a.value), b.b);
+                if (a.isConstant() && b.kind == Kind.DIV && b.a.isConstant())
+                    return binary(Kind.DIV, Node.constant(a.value * b.a.value), b.b);
+                if (a.equals(b)) return power(a, Node.constant(2));
+                return Node.binary(kind, a, b);
+            case DIV:
+                if (a.isConstant(0)) return Node.constant(0);
+                if (b.isConstant(1)) return a;
+                if (b.isConstant(-1)) return negate(a);
+                if (a.kind == Kind.NEG) return negate(binary(Kind.DIV, a.a, b));
+                if (b.kind == Kind.NEG) return negate(binary(Kind.DIV, a, b.a));
+                if (b.isConstant() && a.kind == Kind.MUL && a.a.isConstant())
+                    return binary(Kind.MUL, Node.constant(a.a.value / b.value), a.b);
+                return Node.binary(kind, a, b);
+            case POW:
+                return power(a, b);
+            default:
+                return Node.binary(kind, a, b);
+        }
+    }
+
+    private static Node power(Node a, Node b) {
+        if (a.isConstant() && b.isConstant()) return Node.constant(Math.pow(a.value, b.value));
+        if (b.isConstant(0)) return Node.constant(1);
+        if (b.isConstant(1)) return a;
+        // (u ^ c) ^ d = u ^ (c * d) only holds for integer exponents
+        if (a.kind == Kind.POW && a.b.isConstant() && b.isConstant()
+                && a.b.value == Math.rint(a.b.value) && b.value == Math.rint(b.value))
+            return power(a.a, Node.constant(a.b.value * b.value));
+        return Node.binary(Kind.POW, a, b);
+    }
+
+    private static Node negate(Node a) {
+        if (a.isConstant()) return Node.constant(-a.value);
+        if (a.kind == Kind.NEG) return a.a;
+        if (a.kind == Kind.SUB) return Node.binary(Kind.SUB, a.b, a.a);
+        return Node.negate(a);
+    }
+}
@@ -0,0 +1,227 @@
+package render;
+
+import functions.Domain;
+import functions.DomainFunction;
+import functions.Function;
+import solver.SampleStore;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Samples a function for drawing at a given pixel density. A coarse uniform pass
+ * is refined by recursive bisection only where the chord deviates from the curve
+ * (or bends) by more than the pixel tolerance, so flat stretches cost a handful of
+ * evaluations and steep or curved stretches get sub-pixel detail. Functions that know
+ * their domain are not probed where they are undefined, and are cut a fraction of a
+ * pixel either side of each pole and jump instead of being bisected into them.
+ */
+public class AdaptiveSampler {
+    public static final double DEFAULT_TOLERANCE = 0.25;  // pixels
+    public static final int DEFAULT_BUDGET = 8192;        // evaluations per curve
+
+    private static final double INITIAL_STEP_PX = 4;
+    private static final double MIN_WIDTH_PX = 0.5;
+    private static final int MAX_DEPTH = 16;
+    private static final double MIN_TURN_COS = 0.995;     // ~5.7 degrees
+    private static final double MIN_TURN_LENGTH_PX = 4;
+    private static final double BREAK_GAP_PX = 0.25;
+    private static final double[] NO_BREAKS = new double[0];
+    private static final int CANCEL_CHECK_MASK = 63;
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final double tolerance;
+    private final int budget;
+
+    private Function f;
+    private double scale;
+    private CurveBuffer out;
+    private BooleanSupplier cancelled;
+    private int evaluations;
+    private int limit;
+    private double[] gridX = new double[0];
+
+    public AdaptiveSampler() {
+        this(DEFAULT_TOLERANCE, DEFAULT_BUDGET);
+    }
+
+    public AdaptiveSampler(double tolerance, int budget) {
+        if (tolerance <= 0) throw new IllegalArgumentException("tolerance must be positive");
+        if (budget < 2) throw new IllegalArgumentException("budget must be at least 2");
+        this.tolerance = tolerance;
+        this.budget = budget;
+    }
+
+    /**
+     * Appends samples of f over [minX, maxX] to out, where scale is the number of
+     * pixels per unit. Non-finite regions and poles are emitted as breaks.
+     * Returns the number of evaluations made, never more than the budget. The uniform
+     * pass counts against the budget either way, so the output does not depend on
+     * whether the {@link SampleStore} already held it, but only counts in the result
+     * when it had to be evaluated.
+     */
+    public int sample(Function f, double minX, double maxX, double scale, CurveBuffer out) {
+        return sample(f, minX, maxX, scale, out, NEVER);
+    }
+
+    /**
+     * Same as above, but gives up early once cancelled reports true; the partial
+     * output is then only fit to be discarded.
+     */
+    public int sample(Function f, double minX, double maxX, double scale, CurveBuffer out,
+                      BooleanSupplier cancelled) {
+        this.f = f;
+        this.scale = scale;
+        this.out = out;
+        this.cancelled = cancelled;
+        this.evaluations = 0;
+        this.limit = budget;
+
+        if (!(maxX > minX) || !(scale > 0)) return 0;
+
+        int intervals = (int) Math.ceil((maxX - minX) * scale / INITIAL_STEP_PX);
+        intervals = Math.max(1, Math.min(intervals, budget / 2 - 1));
+        double step = (maxX - minX) / intervals;
+
+        // The uniform pass comes from the shared sample store, so repaints and the area
+        // shade reuse it; only refinement evaluates point by point
+        int points = intervals + 1;
+        if (gridX.length < points) gridX = new double[points];
+        for (int i = 0; i < points; i++) {
+            gridX[i] = minX + i * step;
+        }
+        if (cancelled.getAsBoolean()) limit = 0;
+        int reused = SampleStore.hasValues(f, minX, step, points) ? points : 0;
+        double[] gridY = SampleStore.values(f, minX, step, points);
+        evaluations += points;
+
+        Domain domain = f instanceof DomainFunction ? ((DomainFunction) f).domain(minX, maxX) : null;
+        double[] breaks = domain == null ? NO_BREAKS : domain.getBreaks();
+        double gap = BREAK_GAP_PX / scale;
+        int next = 0;
+
+        double a = minX;
+        double fa = gridY[0];
+        if (isFinite(fa)) out.add(a, fa);
+
+        // restart: the previous interval ended in a break, so a has not been emitted yet
+        boolean restart = false;
+        for (int i = 1; i <= intervals && limit > 0; i++) {
+            double b = gridX[i];
+            double fb = gridY[i];
+            if (restart && isFinite(fa)) out.add(a, fa);
+            restart = false;
+            while (next < breaks.length && breaks[next] <= a) next++;
+            if (domain != null && !domain.overlaps(a, b)) {
+                out.addBreak();
+                restart = true;
+            } else {
+                while (next < breaks.length && breaks[next] <= b && !restart) {
+                    double p = breaks[next++];
+                    // Out of budget, the curve just resumes at the next grid point
+                    if (p - gap > a && evaluations < limit) refine(a, fa, p - gap, eval(p - gap), 0);
+                    out.addBreak();
+                    if (p + gap < b) {
+                        a = p + gap;
+                        fa = evaluations < limit ? eval(a) : Double.NaN;
+                        if (isFinite(fa)) out.add(a, fa);
+                    } else {
+                        restart = true;
+                    }
+                }
+                if (!restart) refine(a, fa, b, fb, 0);
+            }
+            a = b;
+            fa = fb;
+        }
+
+        this.f = null;
+        this.out = null;
+        this.cancelled = null;
+        return evaluations - reused;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    private void refine(double a, double fa, double b, double fb, int depth) {
+        boolean finiteA = isFinite(fa);
+        boolean finiteB = isFinite(fb);
+
+        if (depth >= MAX_DEPTH || evaluations >= limit || (b - a) * scale < MIN_WIDTH_PX) {
+            emit(b, fb, finiteA);
+            return;
+        }
+
+        double m = 0.5 * (a + b);
+        double fm = eval(m);
+        boolean finiteM = isFinite(fm);
+
+        if (!finiteA && !finiteB && !finiteM) {
+            out.addBreak();
+            return;
+        }
+
+        if (finiteA && finiteB && finiteM) {
+            double deviation = Math.abs(fm - 0.5 * (fa + fb)) * scale;
+            if (deviation <= tolerance && !turnsSharply(a, fa, m, fm, b, fb)) {
+                out.add(m, fm);
+                out.add(b, fb);
+                return;
+            }
+            if (isLastLevel(a, m, b, depth)) {
+                // Still far off the chord at sub-pixel width: a midpoint outside the
+                // endpoint range means a pole, anything else is a steep but connected curve
+                if (fm > Math.max(fa, fb) + tolerance / scale || fm < Math.min(fa, fb) - tolerance / scale) {
+                    out.addBreak();
+                    out.add(b, fb);
+                } else {
+                    out.add(m, fm);
+                    out.add(b, fb);
+                }
+                return;
+            }
+        }
+
+        refine(a, fa, m, fm, depth + 1);
+        refine(m, fm, b, fb, depth + 1);
+    }
+
+    // True when neither half would be refined any further, using the same width test refine() applies
+    private boolean isLastLevel(double a, double m, double b, int depth) {
+        return depth + 1 >= MAX_DEPTH || evaluations >= limit
+                || (m - a) * scale < MIN_WIDTH_PX || (b - m) * scale < MIN_WIDTH_PX;
+    }
+
+    private boolean turnsSharply(double a, double fa, double m, double fm, double b, double fb) {
+        double dx1 = (m - a) * scale, dy1 = (fm - fa) * scale;
+        double dx2 = (b - m) * scale, dy2 = (fb - fm) * scale;
+        double len1 = Math.hypot(dx1, dy1);
+        double len2 = Math.hypot(dx2, dy2);
+        if (len1 + len2 < MIN_TURN_LENGTH_PX) return false;
+        return (dx1 * dx2 + dy1 * dy2) < MIN_TURN_COS * len1 * len2;
+    }
+
+    private void emit(double b, double fb, boolean finiteA) {
+        if (isFinite(fb)) {
+            if (!finiteA) out.addBreak();
+            out.add(b, fb);
+        } else {
+            out.addBreak();
+        }
+    }
+
+    private double eval(double x) {
+        if ((evaluations & CANCEL_CHECK_MASK) == 0 && cancelled.getAsBoolean()) limit = 0;
+        evaluations++;
+        return f.evaluate(x);
+    }
+
+    private static boolean isFinite(double v) {
+        return !Double.isNaN(v) && !Double.isInfinite(v);
+    }
+}
@@ -0,0 +1,37 @@
+package render;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the per-thread allocation counter HotSpot keeps. On JVMs without it every
+ * reading is -1 and callers should treat the measurement as unavailable.
+ */
+public final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS = lookup();
+
+    private AllocationMeter() {
+    }
+
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /** Bytes allocated so far by the calling thread, or -1 if unsupported. */
+    public static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean lookup() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return threads;
+                }
+            }
+        } catch (RuntimeException | LinkageError ignored) {}
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package render;
+
+import functions.Function;
+import solver.Integral;
+import solver.IntegrationSolver;
+
+import java.util.function.BooleanSupplier;
+
+public final class AreaShade {
+    public final double x1;
+    public final double x2;
+    public final double area;
+    public final Integral integral;
+    public final double labelY;
+    public final String label;
+    public final CurveBuffer samples;
+
+    private AreaShade(double x1, double x2, Integral integral, double labelY, CurveBuffer samples) {
+        this.x1 = x1;
+        this.x2 = x2;
+        this.area = integral.value;
+        this.integral = integral;
+        this.labelY = labelY;
+        this.label = label(integral);
+        this.samples = samples;
+    }
+
+    private static volatile Cached last;
+
+    private static final class Cached {
+        final Function f;
+        final double x1, x2;
+        final Integral integral;
+
+        Cached(Function f, double x1, double x2, Integral integral) {
+            this.f = f;
+            this.x1 = x1;
+            this.x2 = x2;
+            this.integral = integral;
+        }
+    }
+
+    private static String label(Integral integral) {
+        String text = String.format("Area ≈ %.4f ± %.1g", integral.value, integral.error);
+        if (integral.singularAtStart || integral.singularAtEnd) text += " (singular endpoint)";
+        else if (!integral.converged) text += " (not converged)";
+        return text;
+    }
+
+    public static AreaShade compute(Function f, double x1, double x2, double scale, BooleanSupplier cancelled) {
+        CurveBuffer samples = new CurveBuffer();
+        new AdaptiveSampler().sample(f, x1, x2, scale, samples, cancelled);
+
+        // The integral doesn't depend on the view, so pans and zooms reuse the last one
+        Cached cached = last;
+        Integral integral;
+        if (cached != null && cached.f == f && cached.x1 == x1 && cached.x2 == x2) {
+            integral = cached.integral;
+        } else {
+            integral = IntegrationSolver.gaussKronrod(f, x1, x2);
+            last = new Cached(f, x1, x2, integral);
+        }
+        return new AreaShade(x1, x2, integral, f.evaluate((x1 + x2) / 2), samples);
+    }
+}
@@ -0,0 +1,58 @@
+package render;
+
+import java.util.Arrays;
+
+public class CurveBuffer {
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    public CurveBuffer() {
+        this(256);
+    }
+
+    public CurveBuffer(int capacity) {
+        xs = new double[Math.max(capacity, 16)];
+        ys = new double[xs.length];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(double x, double y) {
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    // A break is stored as a NaN sample; consecutive breaks collapse into one
+    public void addBreak() {
+        if (size == 0 || isBreak(size - 1)) return;
+        add(Double.NaN, Double.NaN);
+    }
+
+    public boolean isBreak(int i) {
+        return Double.isNaN(ys[i]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double x(int i) {
+        return xs[i];
+    }
+
+    public double y(int i) {
+        return ys[i];
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= xs.length) return;
+        int capacity = Math.max(needed, xs.length * 2);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+    }
+}
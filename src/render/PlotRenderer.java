@@ -0,0 +1,177 @@
+package render;
+
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * Draws a scene for a viewport. Stateless, so the same code paints the background
+ * render buffer on worker threads and the vector output used for SVG export.
+ */
+public class PlotRenderer {
+    public static final Color AREA_FILL = new Color(0, 0, 255, 50);
+    public static final BasicStroke AXIS_STROKE = new BasicStroke(2);
+    public static final BasicStroke CURVE_STROKE = new BasicStroke(2);
+    public static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 10);
+    public static final Font AREA_FONT = new Font("Arial", Font.BOLD, 14);
+    public static final Color INTERSECTION_COLOR = Color.RED;
+    public static final Color EXTREMUM_COLOR = Color.MAGENTA;
+    public static final Color INFLECTION_COLOR = Color.ORANGE;
+    public static final int POINT_RADIUS = 4;
+
+    private static final int CACHED_LABELS = 1000;
+    private static final String[] LABELS = new String[2 * CACHED_LABELS + 1];
+    private static final ThreadLocal<Path2D.Double> PATH = ThreadLocal.withInitial(Path2D.Double::new);
+
+    // Ticks just outside the viewport still get drawn, so labels that straddle a tile edge line up
+    private static final double LABEL_MARGIN_PX = 40;
+
+    public static void paintBackground(Graphics2D g2, Viewport vp) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        int w = vp.width;
+        int h = vp.height;
+        double margin = LABEL_MARGIN_PX / vp.scale;
+        double minX = vp.minX() - margin, maxX = vp.maxX() + margin;
+        double minY = vp.minY() - margin, maxY = vp.maxY() + margin;
+
+        // Grid
+        g2.setColor(Color.LIGHT_GRAY);
+        for (int i = (int) Math.floor(minX); i <= maxX; i++) {
+            int x = (int) vp.screenX(i);
+            g2.drawLine(x, 0, x, h);
+        }
+        for (int i = (int) Math.floor(minY); i <= maxY; i++) {
+            int y = (int) vp.screenY(i);
+            g2.drawLine(0, y, w, y);
+        }
+
+        // Axes
+        g2.setColor(Color.BLACK);
+        int axisX = (int) vp.screenX(0);
+        int axisY = (int) vp.screenY(0);
+        g2.setStroke(AXIS_STROKE);
+        g2.drawLine(0, axisY, w, axisY);
+        g2.drawLine(axisX, 0, axisX, h);
+
+        // Axis labels
+        g2.setFont(LABEL_FONT);
+        g2.setColor(Color.DARK_GRAY);
+        for (int i = (int) Math.floor(minX); i <= maxX; i++) {
+            int x = (int) vp.screenX(i);
+            g2.drawString(label(i), x + 2, axisY + 12);
+        }
+        for (int i = (int) Math.floor(minY); i <= maxY; i++) {
+            int y = (int) vp.screenY(i);
+            g2.drawString(label(i), axisX + 5, y - 3);
+        }
+    }
+
+    /** Paints the whole scene synchronously; used where a vector result is wanted. */
+    public static void paintScene(Graphics2D g2, Viewport vp, Scene scene) {
+        paintBackground(g2, vp);
+        AdaptiveSampler sampler = new AdaptiveSampler();
+        CurveBuffer samples = new CurveBuffer();
+        for (int i = 0; i < scene.functions.size(); i++) {
+            samples.clear();
+            sampler.sample(scene.functions.get(i), vp.minX(), vp.maxX(), vp.scale, samples);
+            paintCurve(g2, vp, scene.colors.get(i), samples);
+        }
+        if (scene.hasArea()) {
+            paintArea(g2, vp, AreaShade.compute(scene.functions.get(0), scene.areaX1, scene.areaX2, vp.scale, () -> false));
+        }
+        paintAnnotations(g2, vp, scene);
+    }
+
+    public static void paintCurve(Graphics2D g2, Viewport vp, Color color, CurveBuffer samples) {
+        g2.setColor(color);
+        g2.setStroke(CURVE_STROKE);
+        Path2D.Double path = PATH.get();
+        path.reset();
+        boolean first = true;
+        for (int i = 0; i < samples.size(); i++) {
+            if (samples.isBreak(i)) {
+                first = true;
+                continue;
+            }
+            double sx = vp.screenX(samples.x(i));
+            double sy = vp.screenY(samples.y(i));
+            if (first) {
+                path.moveTo(sx, sy);
+                first = false;
+            } else {
+                path.lineTo(sx, sy);
+            }
+        }
+        g2.draw(path);
+        path.reset();
+    }
+
+    public static void paintArea(Graphics2D g2, Viewport vp, AreaShade shade) {
+        g2.setColor(AREA_FILL);
+        CurveBuffer samples = shade.samples;
+        double baseY = vp.screenY(0);
+        Path2D.Double region = PATH.get();
+        region.reset();
+        boolean open = false;
+        double lastX = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            if (samples.isBreak(i)) {
+                if (open) close(region, lastX, baseY);
+                open = false;
+                continue;
+            }
+            double sx = vp.screenX(samples.x(i));
+            double sy = vp.screenY(samples.y(i));
+            if (!open) {
+                region.moveTo(sx, baseY);
+                open = true;
+            }
+            region.lineTo(sx, sy);
+            lastX = sx;
+        }
+        if (open) close(region, lastX, baseY);
+        g2.fill(region);
+        region.reset();
+
+        g2.setColor(Color.BLUE);
+        g2.setFont(AREA_FONT);
+        int textX = (int) vp.screenX((shade.x1 + shade.x2) / 2);
+        int textY = (int) vp.screenY(shade.labelY) - 10;
+        g2.drawString(shade.label, textX, textY);
+    }
+
+    private static String label(int i) {
+        if (i < -CACHED_LABELS || i > CACHED_LABELS) return Integer.toString(i);
+        String label = LABELS[i + CACHED_LABELS];
+        if (label == null) {
+            label = Integer.toString(i);
+            LABELS[i + CACHED_LABELS] = label;
+        }
+        return label;
+    }
+
+    private static void close(Path2D region, double lastX, double baseY) {
+        region.lineTo(lastX, baseY);
+        region.closePath();
+    }
+
+    public static void paintPoints(Graphics2D g2, Viewport vp, List<? extends Point2D> points, Color color) {
+        g2.setColor(color);
+        for (Point2D p : points) paintPoint(g2, vp, p.getX(), p.getY());
+    }
+
+    public static void paintPoint(Graphics2D g2, Viewport vp, double x, double y) {
+        int sx = (int) vp.screenX(x);
+        int sy = (int) vp.screenY(y);
+        g2.fillOval(sx - POINT_RADIUS, sy - POINT_RADIUS, 2 * POINT_RADIUS, 2 * POINT_RADIUS);
+    }
+
+    public static void paintAnnotations(Graphics2D g2, Viewport vp, Scene scene) {
+        paintPoints(g2, vp, scene.intersectionPoints, INTERSECTION_COLOR);
+        paintPoints(g2, vp, scene.extremaPoints, EXTREMUM_COLOR);
+        paintPoints(g2, vp, scene.inflectionPoints, INFLECTION_COLOR);
+    }
+}
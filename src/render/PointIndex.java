@@ -0,0 +1,191 @@
+package render;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over plot points for nearest-point queries. Points are kept in
+ * primitive arrays and chained per cell; cells live in an open-addressed hash
+ * table, so only occupied cells cost memory and a query touches just the cells
+ * within the search radius.
+ */
+public class PointIndex {
+    private final double cellPx;
+    private double cellSize;
+
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int[] tags = new int[256];
+    private int[] next = new int[256];
+    private int size;
+
+    private long[] cellKeys = new long[64];
+    private int[] cellHeads = new int[64];
+    private int cells;
+
+    /** cellPx is the grid spacing in pixels, ideally close to the usual query radius. */
+    public PointIndex(double cellPx) {
+        this.cellPx = cellPx;
+        reset(1);
+    }
+
+    /** Drops all points and lays the grid out for the given pixels-per-unit scale. */
+    public void reset(double scale) {
+        cellSize = cellPx / scale;
+        size = 0;
+        cells = 0;
+        Arrays.fill(cellHeads, -1);
+    }
+
+    public int add(double x, double y, int tag) {
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isInfinite(x) || Double.isInfinite(y)) return -1;
+        if (size == xs.length) {
+            int capacity = size * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        if (2 * (cells + 1) > cellKeys.length) rehash(cellKeys.length * 2);
+
+        int i = size++;
+        xs[i] = x;
+        ys[i] = y;
+        tags[i] = tag;
+        int slot = slot(cellKey(cell(x), cell(y)), true);
+        next[i] = cellHeads[slot];
+        cellHeads[slot] = i;
+        return i;
+    }
+
+    /** Index of the point nearest to (x, y) within radius, or -1 if there is none. */
+    public int nearest(double x, double y, double radius) {
+        if (size == 0) return -1;
+        int cx0 = cell(x - radius), cx1 = cell(x + radius);
+        int cy0 = cell(y - radius), cy1 = cell(y + radius);
+        // A huge radius relative to the grid is cheaper to answer by brute force
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > size) return scan(x, y, radius);
+
+        int best = -1;
+        double bestDist = radius * radius;
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                int slot = slot(cellKey(cx, cy), false);
+                if (slot < 0) continue;
+                for (int i = cellHeads[slot]; i >= 0; i = next[i]) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    double d = dx * dx + dy * dy;
+                    if (d <= bestDist) {
+                        bestDist = d;
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stores the indexes of the points inside the box in out, in the order they were
+     * added and as many as fit, and returns how many there are in all.
+     */
+    public int within(double minX, double minY, double maxX, double maxY, int[] out) {
+        if (size == 0) return 0;
+        int cx0 = cell(minX), cx1 = cell(maxX);
+        int cy0 = cell(minY), cy1 = cell(maxY);
+        int found = 0;
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > size) {
+            for (int i = 0; i < size; i++) {
+                if (xs[i] < minX || xs[i] > maxX || ys[i] < minY || ys[i] > maxY) continue;
+                if (found < out.length) out[found] = i;
+                found++;
+            }
+            return found;
+        }
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                int slot = slot(cellKey(cx, cy), false);
+                if (slot < 0) continue;
+                for (int i = cellHeads[slot]; i >= 0; i = next[i]) {
+                    if (xs[i] < minX || xs[i] > maxX || ys[i] < minY || ys[i] > maxY) continue;
+                    if (found < out.length) out[found] = i;
+                    found++;
+                }
+            }
+        }
+        Arrays.sort(out, 0, Math.min(found, out.length));
+        return found;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double x(int i) {
+        return xs[i];
+    }
+
+    public double y(int i) {
+        return ys[i];
+    }
+
+    public int tag(int i) {
+        return tags[i];
+    }
+
+    private int scan(double x, double y, double radius) {
+        int best = -1;
+        double bestDist = radius * radius;
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            double d = dx * dx + dy * dy;
+            if (d <= bestDist) {
+                bestDist = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int cell(double v) {
+        double c = Math.floor(v / cellSize);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, c));
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private int slot(long key, boolean insert) {
+        int mask = cellKeys.length - 1;
+        int i = (int) (mix(key) & mask);
+        while (cellHeads[i] >= 0) {
+            if (cellKeys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        if (!insert) return -1;
+        cellKeys[i] = key;
+        cells++;
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = cellKeys;
+        int[] oldHeads = cellHeads;
+        cellKeys = new long[capacity];
+        cellHeads = new int[capacity];
+        Arrays.fill(cellHeads, -1);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldHeads[j] < 0) continue;
+            int i = (int) (mix(oldKeys[j]) & mask);
+            while (cellHeads[i] >= 0) i = (i + 1) & mask;
+            cellKeys[i] = oldKeys[j];
+            cellHeads[i] = oldHeads[j];
+        }
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 29);
+    }
+}
@@ -0,0 +1,345 @@
+package render;
+
+import functions.Function;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Builds frames off the event thread. The plane is cut into fixed-size tiles; tiles
+ * already in the {@link TileCache} are reused and only the missing ones are drawn.
+ * Missing tiles are rendered column by column, with every function sampled once per
+ * column in its own task, first with a coarse tolerance so something appears quickly,
+ * then at full quality. Full-quality samples are kept per function and column in a
+ * {@link SampleCache}, so after some functions are replaced only those are sampled
+ * again. A newer request cancels everything still running for older ones; finished
+ * frames are handed over through {@link #getLatestFrame()}.
+ * <p>
+ * The cached tiles double as the back buffer, and samplers, sample buffers and
+ * paths are reused per worker, so a frame made of cached tiles allocates almost
+ * nothing; {@link #getStats()} reports what each frame did allocate.
+ */
+public class RenderPipeline {
+    public static final int TILE_SIZE = 256;
+
+    private static final double COARSE_TOLERANCE = 2.0;
+    private static final int COARSE_BUDGET = 256;
+    private static final double SAMPLE_MARGIN_PX = 4;
+
+    public static final class Frame {
+        public final Viewport viewport;
+        public final long sceneVersion;
+        public final boolean refined;
+        public final List<TileCache.Key> tileKeys;
+        public final List<TileCache.Tile> tiles;
+        public final int[] tileX;   // top-left corner of each tile in this frame's viewport
+        public final int[] tileY;
+
+        Frame(Viewport viewport, long sceneVersion, boolean refined, List<TileCache.Key> tileKeys,
+              List<TileCache.Tile> tiles, int[] tileX, int[] tileY) {
+            this.viewport = viewport;
+            this.sceneVersion = sceneVersion;
+            this.refined = refined;
+            this.tileKeys = tileKeys;
+            this.tiles = tiles;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final Runnable onFrame;
+    private final TileCache cache;
+    private final SampleCache sampleCache = new SampleCache();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicReference<Frame> latest = new AtomicReference<>();
+    private final RenderStats stats = new RenderStats();
+    private final ConcurrentLinkedQueue<CurveBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<AdaptiveSampler> coarseSampler =
+            ThreadLocal.withInitial(() -> new AdaptiveSampler(COARSE_TOLERANCE, COARSE_BUDGET));
+    private final ThreadLocal<AdaptiveSampler> fineSampler = ThreadLocal.withInitial(AdaptiveSampler::new);
+    private final ThreadLocal<CurveBuffer> tileSamples = ThreadLocal.withInitial(CurveBuffer::new);
+
+    public RenderPipeline(Runnable onFrame) {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new TileCache(), onFrame);
+    }
+
+    public RenderPipeline(int threads, TileCache cache, Runnable onFrame) {
+        this.workers = Executors.newFixedThreadPool(threads, new WorkerFactory());
+        this.cache = cache;
+        this.onFrame = onFrame;
+    }
+
+    public Frame getLatestFrame() {
+        return latest.get();
+    }
+
+    public TileCache getTileCache() {
+        return cache;
+    }
+
+    public SampleCache getSampleCache() {
+        return sampleCache;
+    }
+
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Starts rendering a new frame and cancels any frame still in progress. The frame
+     * is drawn at the zoom level nearest to the requested scale and covers the requested
+     * view once stretched to it; its {@link Frame#viewport} is the one actually drawn.
+     */
+    public void request(Viewport requested, Scene scene) {
+        long gen = generation.incrementAndGet();
+        if (requested.width <= 0 || requested.height <= 0) return;
+        BooleanSupplier cancelled = () -> generation.get() != gen;
+
+        int level = TileCache.level(requested.scale);
+        Viewport vp = atScale(requested, TileCache.levelScale(level));
+        TileLayout layout = new TileLayout(vp);
+        Map<TileCache.Key, TileCache.Tile> cached = new LinkedHashMap<>();
+        Map<Integer, List<TileCache.Key>> missing = new LinkedHashMap<>();
+        for (int tx = layout.tx0; tx <= layout.tx1; tx++) {
+            for (int ty = layout.ty0; ty <= layout.ty1; ty++) {
+                TileCache.Key key = new TileCache.Key(level, tx, ty, scene.version);
+                TileCache.Tile tile = cache.get(key);
+                if (tile != null) cached.put(key, tile);
+                else missing.computeIfAbsent(tx, k -> new ArrayList<>()).add(key);
+            }
+        }
+
+        AtomicLong allocated = new AtomicLong();
+        if (missing.isEmpty()) {
+            publish(gen, vp, level, scene, layout, cached, Collections.emptyMap(), true, allocated);
+            return;
+        }
+
+        CompletableFuture<AreaShade> area = scene.hasArea()
+                ? CompletableFuture.supplyAsync(() -> cancelled.getAsBoolean() ? null
+                : AreaShade.compute(scene.functions.get(0), scene.areaX1, scene.areaX2, vp.scale, cancelled), workers)
+                : CompletableFuture.completedFuture(null);
+
+        Map<TileCache.Key, TileCache.Tile> coarse = new ConcurrentHashMap<>();
+        renderTiles(scene, vp.scale, missing, area, coarseSampler, cancelled, coarse, false, allocated)
+                .thenRun(() -> publish(gen, vp, level, scene, layout, cached, coarse, false, allocated))
+                .thenCompose(v -> {
+                    if (cancelled.getAsBoolean()) return CompletableFuture.completedFuture(null);
+                    Map<TileCache.Key, TileCache.Tile> fine = new ConcurrentHashMap<>();
+                    return renderTiles(scene, vp.scale, missing, area, fineSampler, cancelled, fine, true, allocated)
+                            .thenRun(() -> publish(gen, vp, level, scene, layout, cached, fine, true, allocated));
+                })
+                .exceptionally(ex -> {
+                    stats.recordFailure(ex);
+                    return null;
+                });
+    }
+
+    /** Cancels in-flight work without starting anything new. */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private CompletableFuture<Void> renderTiles(Scene scene, double scale, Map<Integer, List<TileCache.Key>> missing,
+                                                CompletableFuture<AreaShade> area, ThreadLocal<AdaptiveSampler> sampler,
+                                                BooleanSupplier cancelled, Map<TileCache.Key, TileCache.Tile> out,
+                                                boolean store, AtomicLong allocated) {
+        List<CompletableFuture<Void>> columns = new ArrayList<>(missing.size());
+        for (Map.Entry<Integer, List<TileCache.Key>> column : missing.entrySet()) {
+            int tx = column.getKey();
+            double minX = tx * (double) TILE_SIZE / scale;
+            double maxX = (tx + 1) * (double) TILE_SIZE / scale;
+            boolean[] pooled = new boolean[scene.functions.size()];
+            List<CompletableFuture<CurveBuffer>> curves = sampleAll(scene, tx, minX - SAMPLE_MARGIN_PX / scale,
+                    maxX + SAMPLE_MARGIN_PX / scale, scale, sampler, cancelled, store, pooled, allocated);
+
+            // Async, as with every sample cached the futures are already complete and this would run on the caller
+            columns.add(allOf(curves).thenCombine(area, (v, shade) -> shade).thenAcceptAsync(shade -> {
+                long before = AllocationMeter.allocatedBytes();
+                try {
+                    for (TileCache.Key key : column.getValue()) {
+                        if (cancelled.getAsBoolean()) return;
+                        TileCache.Tile tile = renderTile(key, scale, scene, curves, shade, tileSamples.get());
+                        out.put(key, tile);
+                        if (store) cache.put(key, tile);
+                    }
+                } finally {
+                    for (int i = 0; i < pooled.length; i++) {
+                        if (pooled[i]) bufferPool.offer(curves.get(i).join());
+                    }
+                    allocated.addAndGet(AllocationMeter.allocatedBytes() - before);
+                }
+            }, workers));
+        }
+        return allOf(columns);
+    }
+
+    // Cached samples are used as they are, in either pass; pooled[i] is set for buffers to hand back afterwards
+    private List<CompletableFuture<CurveBuffer>> sampleAll(Scene scene, int tx, double minX, double maxX, double scale,
+                                                          ThreadLocal<AdaptiveSampler> sampler,
+                                                          BooleanSupplier cancelled, boolean store, boolean[] pooled,
+                                                          AtomicLong allocated) {
+        List<CompletableFuture<CurveBuffer>> tasks = new ArrayList<>(scene.functions.size());
+        for (int i = 0; i < scene.functions.size(); i++) {
+            Function f = scene.functions.get(i);
+            SampleCache.Key key = new SampleCache.Key(f, scale, tx);
+            CurveBuffer cached = sampleCache.get(key);
+            if (cached != null) {
+                tasks.add(CompletableFuture.completedFuture(cached));
+                continue;
+            }
+            int slot = i;
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                long before = AllocationMeter.allocatedBytes();
+                CurveBuffer samples = bufferPool.poll();
+                if (samples == null) samples = new CurveBuffer();
+                samples.clear();
+                if (!cancelled.getAsBoolean()) {
+                    sampler.get().sample(f, minX, maxX, scale, samples, cancelled);
+                }
+                // A cancelled sampler may have stopped part way, so only finished full-quality samples are kept
+                if (store && !cancelled.getAsBoolean()) sampleCache.put(key, samples);
+                else pooled[slot] = true;
+                allocated.addAndGet(AllocationMeter.allocatedBytes() - before);
+                return samples;
+            }, workers));
+        }
+        return tasks;
+    }
+
+    private static TileCache.Tile renderTile(TileCache.Key key, double scale, Scene scene,
+                                             List<CompletableFuture<CurveBuffer>> curves, AreaShade shade,
+                                             CurveBuffer inside) {
+        Viewport tv = tileViewport(key, scale);
+        double minX = tv.minX(), maxX = tv.maxX();
+        double minY = tv.minY(), maxY = tv.maxY();
+
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        inside.clear();
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            PlotRenderer.paintBackground(g2, tv);
+            for (int i = 0; i < curves.size(); i++) {
+                CurveBuffer samples = curves.get(i).join();
+                PlotRenderer.paintCurve(g2, tv, scene.colors.get(i), samples);
+                for (int j = 0; j < samples.size(); j++) {
+                    double x = samples.x(j), y = samples.y(j);
+                    if (x >= minX && x < maxX && y > minY && y <= maxY) inside.add(x, y);
+                }
+            }
+            if (shade != null) PlotRenderer.paintArea(g2, tv, shade);
+        } finally {
+            g2.dispose();
+        }
+
+        double[] xs = new double[inside.size()];
+        double[] ys = new double[inside.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = inside.x(i);
+            ys[i] = inside.y(i);
+        }
+        return new TileCache.Tile(image, xs, ys);
+    }
+
+    // A TILE_SIZE square viewport whose pixel (0, 0) is the tile's top-left corner
+    private static Viewport tileViewport(TileCache.Key key, double scale) {
+        return new Viewport(TILE_SIZE, TILE_SIZE, scale,
+                (key.tx + 0.5) * TILE_SIZE / scale, -(key.ty + 0.5) * TILE_SIZE / scale);
+    }
+
+    // The same view centre at another scale, one pixel larger than needed to cover the original once stretched
+    private static Viewport atScale(Viewport vp, double scale) {
+        if (scale == vp.scale) return vp;
+        double k = scale / vp.scale;
+        return new Viewport((int) Math.ceil(vp.width * k) + 1, (int) Math.ceil(vp.height * k) + 1, scale,
+                vp.offsetX, vp.offsetY);
+    }
+
+    private void publish(long gen, Viewport vp, int level, Scene scene, TileLayout layout,
+                         Map<TileCache.Key, TileCache.Tile> cached, Map<TileCache.Key, TileCache.Tile> rendered,
+                         boolean refined, AtomicLong allocated) {
+        if (generation.get() != gen) return;
+        long before = AllocationMeter.allocatedBytes();
+
+        int count = (layout.tx1 - layout.tx0 + 1) * (layout.ty1 - layout.ty0 + 1);
+        List<TileCache.Key> keys = new ArrayList<>(count);
+        List<TileCache.Tile> tiles = new ArrayList<>(count);
+        int[] tileX = new int[count];
+        int[] tileY = new int[count];
+        for (int tx = layout.tx0; tx <= layout.tx1; tx++) {
+            for (int ty = layout.ty0; ty <= layout.ty1; ty++) {
+                TileCache.Key key = new TileCache.Key(level, tx, ty, scene.version);
+                TileCache.Tile tile = cached.get(key);
+                if (tile == null) tile = rendered.get(key);
+                if (tile == null) continue;
+                tileX[tiles.size()] = layout.screenX(tx);
+                tileY[tiles.size()] = layout.screenY(ty);
+                keys.add(key);
+                tiles.add(tile);
+            }
+        }
+
+        if (generation.get() != gen) return;
+        latest.set(new Frame(vp, scene.version, refined, Collections.unmodifiableList(keys),
+                Collections.unmodifiableList(tiles), tileX, tileY));
+        if (refined) stats.recordFrame(allocated.addAndGet(AllocationMeter.allocatedBytes() - before));
+        onFrame.run();
+    }
+
+    private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> tasks) {
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // Tile grid coordinates are world coordinates in pixels at the current scale, y pointing down
+    private static final class TileLayout {
+        final double worldLeft;
+        final double worldTop;
+        final int tx0, tx1, ty0, ty1;
+
+        TileLayout(Viewport vp) {
+            worldLeft = vp.offsetX * vp.scale - vp.centerX();
+            worldTop = -vp.offsetY * vp.scale - vp.centerY();
+            tx0 = (int) Math.floor(worldLeft / TILE_SIZE);
+            tx1 = (int) Math.floor((worldLeft + vp.width - 1) / TILE_SIZE);
+            ty0 = (int) Math.floor(worldTop / TILE_SIZE);
+            ty1 = (int) Math.floor((worldTop + vp.height - 1) / TILE_SIZE);
+        }
+
+        int screenX(int tx) {
+            return (int) Math.round(tx * (double) TILE_SIZE - worldLeft);
+        }
+
+        int screenY(int ty) {
+            return (int) Math.round(ty * (double) TILE_SIZE - worldTop);
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "plot-render-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package render;
+
+/**
+ * Allocation counters for the render path, meant to catch regressions: a frame
+ * served from cached tiles should stay close to zero bytes. Frames that failed are
+ * counted here too, with the last failure kept for inspection.
+ */
+public class RenderStats {
+    private volatile long lastFrameBytes = -1;
+    private volatile long lastPaintBytes = -1;
+    private volatile long maxPaintBytes;
+    private volatile long frames;
+    private volatile long paints;
+    private volatile long failures;
+    private volatile Throwable lastFailure;
+
+    /** Bytes allocated by the workers for the last completed frame, including tile rendering. */
+    public long getLastFrameAllocatedBytes() {
+        return lastFrameBytes;
+    }
+
+    /** Bytes allocated on the event thread by the last paintComponent call. */
+    public long getLastPaintAllocatedBytes() {
+        return lastPaintBytes;
+    }
+
+    public long getMaxPaintAllocatedBytes() {
+        return maxPaintBytes;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getPaintCount() {
+        return paints;
+    }
+
+    public long getFailureCount() {
+        return failures;
+    }
+
+    /** What made the last failed frame fail, or null. */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    synchronized void recordFailure(Throwable t) {
+        lastFailure = t;
+        failures++;
+    }
+
+    synchronized void recordFrame(long bytes) {
+        lastFrameBytes = bytes;
+        frames++;
+    }
+
+    public synchronized void recordPaint(long bytes) {
+        if (bytes < 0) return;
+        lastPaintBytes = bytes;
+        maxPaintBytes = Math.max(maxPaintBytes, bytes);
+        paints++;
+    }
+
+    public synchronized void reset() {
+        lastFrameBytes = -1;
+        lastPaintBytes = -1;
+        maxPaintBytes = 0;
+        frames = 0;
+        paints = 0;
+        failures = 0;
+        lastFailure = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderStats[frames=%d, lastFrameBytes=%d, paints=%d, lastPaintBytes=%d, maxPaintBytes=%d%s]",
+                frames, lastFrameBytes, paints, lastPaintBytes, maxPaintBytes,
+                failures > 0 ? ", failures=" + failures : "");
+    }
+}
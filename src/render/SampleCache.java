@@ -0,0 +1,104 @@
+package render;
+
+import functions.Function;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * LRU cache of full-quality curve samples, one entry per function, tile column and
+ * scale, bounded by an approximate memory cap. Functions are told apart by identity,
+ * so when a parameter change replaces some of them the tiles are redrawn from the
+ * samples of the others and only the replacements are sampled again.
+ * <p>
+ * Cached buffers are shared between render workers and must not be written to.
+ */
+public class SampleCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    public static final class Key {
+        public final Function function;
+        public final long scaleBits;
+        public final int tx;
+
+        public Key(Function function, double scale, int tx) {
+            this.function = function;
+            this.scaleBits = Double.doubleToLongBits(scale);
+            this.tx = tx;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return function == k.function && scaleBits == k.scaleBits && tx == k.tx;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(function);
+            h = 31 * h + Long.hashCode(scaleBits);
+            return 31 * h + tx;
+        }
+    }
+
+    private final LinkedHashMap<Key, CurveBuffer> samples = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public SampleCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public SampleCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized CurveBuffer get(Key key) {
+        CurveBuffer buffer = samples.get(key);
+        if (buffer == null) misses++;
+        else hits++;
+        return buffer;
+    }
+
+    public synchronized void put(Key key, CurveBuffer buffer) {
+        CurveBuffer old = samples.put(key, buffer);
+        if (old != null) bytes -= bytes(old);
+        bytes += bytes(buffer);
+        Iterator<CurveBuffer> it = samples.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= bytes(it.next());
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        samples.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static long bytes(CurveBuffer buffer) {
+        return 16L * buffer.size() + 64;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SampleCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d]",
+                samples.size(), bytes, maxBytes, hits, misses);
+    }
+}
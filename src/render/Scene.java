@@ -0,0 +1,50 @@
+package render;
+
+import functions.Function;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of everything that is drawn, taken on the EDT so that
+ * render workers never touch the panel's mutable lists. Tiles are keyed by
+ * {@link #version}, which only changes with what is drawn into them: the functions,
+ * their colours and the shaded area. The marked points are drawn over the tiles.
+ */
+public final class Scene {
+    public final long version;
+    public final List<Function> functions;
+    /** The colour of each function, by position. */
+    public final List<Color> colors;
+    public final List<Point2D.Double> intersectionPoints;
+    public final List<Point2D.Double> extremaPoints;
+    public final List<Point2D.Double> inflectionPoints;
+    public final double areaX1;
+    public final double areaX2;
+
+    public Scene(long version, List<Function> functions, List<Color> colors,
+                 List<? extends Point2D.Double> intersectionPoints,
+                 List<Point2D.Double> extremaPoints, List<Point2D.Double> inflectionPoints,
+                 double areaX1, double areaX2) {
+        this.version = version;
+        if (colors.size() != functions.size()) throw new IllegalArgumentException("one colour per function");
+        this.functions = copy(functions);
+        this.colors = copy(colors);
+        this.intersectionPoints = copy(intersectionPoints);
+        this.extremaPoints = copy(extremaPoints);
+        this.inflectionPoints = copy(inflectionPoints);
+        this.areaX1 = areaX1;
+        this.areaX2 = areaX2;
+    }
+
+    public boolean hasArea() {
+        return !Double.isNaN(areaX1) && !Double.isNaN(areaX2) && !functions.isEmpty();
+    }
+
+    private static <T> List<T> copy(List<? extends T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+}
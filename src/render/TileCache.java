@@ -0,0 +1,156 @@
+package render;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * LRU cache of rendered plot tiles, bounded by an approximate memory cap. Tiles are
+ * keyed by zoom level, their position on the tile grid and the scene version, so a
+ * pan at a fixed zoom only misses on the tiles that scrolled into view. Zoom levels
+ * are {@link #LEVELS_PER_DOUBLING} to an octave around {@link #REFERENCE_SCALE}; a
+ * view in between shows the nearest level stretched, so zooming back finds its tiles.
+ */
+public class TileCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int LEVELS_PER_DOUBLING = 4;
+    /** Pixels per unit of level 0, the default zoom, so the initial view is drawn unstretched. */
+    public static final double REFERENCE_SCALE = 40;
+
+    public static final class Key {
+        public final int level;
+        public final int tx;
+        public final int ty;
+        public final long version;
+
+        public Key(int level, int tx, int ty, long version) {
+            this.level = level;
+            this.tx = tx;
+            this.ty = ty;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return level == k.level && tx == k.tx && ty == k.ty && version == k.version;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = level;
+            h = 31 * h + tx;
+            h = 31 * h + ty;
+            return 31 * h + Long.hashCode(version);
+        }
+    }
+
+    public static final class Tile {
+        public final BufferedImage image;
+        public final double[] curveXs;   // curve samples that fall inside the tile, for hit-testing
+        public final double[] curveYs;
+        final long bytes;
+
+        public Tile(BufferedImage image, double[] curveXs, double[] curveYs) {
+            this.image = image;
+            this.curveXs = curveXs;
+            this.curveYs = curveYs;
+            this.bytes = 4L * image.getWidth() * image.getHeight() + 16L * curveXs.length;
+        }
+    }
+
+    /** The zoom level nearest to the given scale. */
+    public static int level(double scale) {
+        return (int) Math.round(Math.log(scale / REFERENCE_SCALE) / Math.log(2) * LEVELS_PER_DOUBLING);
+    }
+
+    public static double levelScale(int level) {
+        return REFERENCE_SCALE * Math.pow(2, level / (double) LEVELS_PER_DOUBLING);
+    }
+
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TileCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized Tile get(Key key) {
+        Tile tile = tiles.get(key);
+        if (tile == null) misses++;
+        else hits++;
+        return tile;
+    }
+
+    public synchronized void put(Key key, Tile tile) {
+        Tile old = tiles.put(key, tile);
+        if (old != null) bytes -= old.bytes;
+        bytes += tile.bytes;
+        trim();
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private void trim() {
+        Iterator<Tile> it = tiles.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TileCache[tiles=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                tiles.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+}
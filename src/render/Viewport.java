@@ -0,0 +1,66 @@
+package render;
+
+public final class Viewport {
+    public final int width;
+    public final int height;
+    public final double scale;
+    public final double offsetX;
+    public final double offsetY;
+
+    public Viewport(int width, int height, double scale, double offsetX, double offsetY) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    public int centerX() {
+        return width / 2;
+    }
+
+    public int centerY() {
+        return height / 2;
+    }
+
+    public double minX() {
+        return -centerX() / scale + offsetX;
+    }
+
+    public double maxX() {
+        return centerX() / scale + offsetX;
+    }
+
+    public double minY() {
+        return -centerY() / scale + offsetY;
+    }
+
+    public double maxY() {
+        return centerY() / scale + offsetY;
+    }
+
+    public double screenX(double x) {
+        return centerX() + (x - offsetX) * scale;
+    }
+
+    public double screenY(double y) {
+        return centerY() - (y - offsetY) * scale;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Viewport)) return false;
+        Viewport v = (Viewport) o;
+        return width == v.width && height == v.height && scale == v.scale
+                && offsetX == v.offsetX && offsetY == v.offsetY;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 31 * width + height;
+        h = 31 * h + Double.hashCode(scale);
+        h = 31 * h + Double.hashCode(offsetX);
+        return 31 * h + Double.hashCode(offsetY);
+    }
+}
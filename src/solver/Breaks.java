@@ -0,0 +1,110 @@
+package solver;
+
+import functions.DomainFunction;
+import functions.Function;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Poles and jumps of functions that know their domain. A sign change across one of
+ * them is not a root, so the scanning solvers discard candidates there and solve the
+ * pieces on either side separately. A break found numerically is only known to within
+ * its domain's tolerance, so the gap left out around it is never narrower than that.
+ */
+final class Breaks {
+    static final double[] NONE = new double[0];
+
+    // Fraction of a bracket left out on each side of a break
+    private static final double GAP = 1e-9;
+
+    private Breaks() {
+    }
+
+    /** Sorted breaks of f within [start, end]; none when f does not know its domain. */
+    static double[] of(Function f, double start, double end) {
+        if (!(f instanceof DomainFunction) || !(end > start)) return NONE;
+        return ((DomainFunction) f).domain(start, end).getBreaks();
+    }
+
+    static double[] of(Function f1, Function f2, double start, double end) {
+        return merge(of(f1, start, end), of(f2, start, end));
+    }
+
+    /** How far f's breaks within [start, end] may lie from where they are reported. */
+    static double tolerance(Function f, double start, double end) {
+        if (!(f instanceof DomainFunction) || !(end > start)) return 0;
+        return ((DomainFunction) f).domain(start, end).getTolerance();
+    }
+
+    static double tolerance(Function f1, Function f2, double start, double end) {
+        return Math.max(tolerance(f1, start, end), tolerance(f2, start, end));
+    }
+
+    static double[] merge(double[] a, double[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        double[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        Arrays.sort(all);
+        return all;
+    }
+
+    /** Whether a break lies in [a, b]. */
+    static boolean within(double[] breaks, double a, double b) {
+        if (breaks.length == 0) return false;
+        int i = Arrays.binarySearch(breaks, a);
+        if (i >= 0) return true;
+        i = -i - 1;
+        return i < breaks.length && breaks[i] <= b;
+    }
+
+    /** [start, end] cut at the breaks, a small gap left out either side of each: start0, end0, start1, end1, ... */
+    static double[] pieces(double[] breaks, double tolerance, double start, double end) {
+        double gap = Math.max(GAP * (end - start), tolerance);
+        double[] out = new double[2 * breaks.length + 2];
+        int n = 0;
+        double l = start;
+        for (double p : breaks) {
+            if (p + gap <= start || p - gap >= end) continue;
+            if (p - gap > l) {
+                out[n++] = l;
+                out[n++] = p - gap;
+            }
+            l = Math.max(l, p + gap);
+        }
+        if (end > l) {
+            out[n++] = l;
+            out[n++] = end;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Roots of g in [a, b] with the breaks inside cut out: each piece between them is
+     * checked for a sign change and refined on its own. As elsewhere, a refined value
+     * larger than the piece's end values means the piece still ran into a pole.
+     */
+    static void roots(DoubleUnaryOperator g, double a, double ga, double b, double gb, double[] breaks,
+                      double tolerance, List<Root> out) {
+        double gap = Math.max(GAP * (b - a), tolerance);
+        int i = Arrays.binarySearch(breaks, a - gap);
+        i = i >= 0 ? i : -i - 1;
+        while (i < breaks.length && breaks[i] + gap <= a) i++;
+        double l = a, gl = ga;
+        for (; ; i++) {
+            boolean last = i >= breaks.length || breaks[i] - gap >= b;
+            double r = last ? b : breaks[i] - gap;
+            double gr = last ? gb : g.applyAsDouble(r);
+            if (r > l && Double.isFinite(gl) && Double.isFinite(gr) && (gl > 0) != (gr > 0)) {
+                Root root = RootRefiner.refine(g, l, gl, r, gr);
+                if (!Double.isNaN(root.x) && Math.abs(root.value) <= Math.max(Math.abs(gl), Math.abs(gr))) out.add(root);
+            }
+            if (last) return;
+            l = Math.max(l, breaks[i] + gap);
+            if (l >= b) return;
+            gl = g.applyAsDouble(l);
+        }
+    }
+}
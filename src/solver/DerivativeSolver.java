@@ -1,13 +1,92 @@
 package solver;
 
+import functions.Differentiable;
+import functions.DualFunction;
 import functions.Function;
 
 public class DerivativeSolver {
+    private static final double H = 1e-5;
+
+    /**
+     * f' as a Function: the exact derivative when f is {@link Differentiable}, otherwise
+     * a wrapper that calls {@link #derivative(Function, double)} point by point.
+     */
+    public static Function derivativeOf(Function f) {
+        Function exact = exact(f, 1);
+        return exact != null ? exact : new Pointwise(f);
+    }
+
+    /** The exact order-th derivative of f, or null if f (or one of its derivatives) has none. */
+    public static Function exact(Function f, int order) {
+        for (int i = 0; i < order && f != null; i++) {
+            f = f instanceof Differentiable ? ((Differentiable) f).derivative() : null;
+        }
+        return f;
+    }
+
+    /** The order-th derivative of f; order 0 is f itself. */
+    public static Function derivativeOf(Function f, int order) {
+        for (int i = 0; i < order; i++) f = derivativeOf(f);
+        return f;
+    }
+
+    /** f'(x): exact for a {@link DualFunction}, central differences for anything else. */
     public static double derivative(Function f, double x) {
-        double h = 1e-5;
-        double fxh1 = f.evaluate(x + h);
-        double fxh2 = f.evaluate(x - h);
+        if (f instanceof DualFunction) {
+            double[] pair = new double[2];
+            ((DualFunction) f).evaluateDual(x, pair);
+            return pair[1];
+        }
+        double fxh1 = f.evaluate(x + H);
+        double fxh2 = f.evaluate(x - H);
         if (Double.isNaN(fxh1) || Double.isNaN(fxh2)) return Double.NaN;
-        return (fxh1 - fxh2) / (2 * h);
+        return (fxh1 - fxh2) / (2 * H);
+    }
+
+    /** f' at xs[from..to) into out[from..to), one dual pass or two batch calls on f. */
+    public static void derivative(Function f, double[] xs, double[] out, int from, int to) {
+        int n = to - from;
+        if (f instanceof DualFunction) {
+            double[] values = new double[xs.length];
+            ((DualFunction) f).evaluateDual(xs, values, out, from, to);
+            return;
+        }
+        double[] plus = new double[n];
+        double[] minus = new double[n];
+        for (int i = 0; i < n; i++) {
+            plus[i] = xs[from + i] + H;
+            minus[i] = xs[from + i] - H;
+        }
+        double[] fPlus = new double[n];
+        double[] fMinus = new double[n];
+        f.evaluate(plus, fPlus, 0, n);
+        f.evaluate(minus, fMinus, 0, n);
+        for (int i = 0; i < n; i++) {
+            double fxh1 = fPlus[i], fxh2 = fMinus[i];
+            out[from + i] = Double.isNaN(fxh1) || Double.isNaN(fxh2) ? Double.NaN : (fxh1 - fxh2) / (2 * H);
+        }
+    }
+
+    private static class Pointwise implements Function {
+        private final Function f;
+
+        Pointwise(Function f) {
+            this.f = f;
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return derivative(f, x);
+        }
+
+        @Override
+        public void evaluate(double[] xs, double[] out, int from, int to) {
+            derivative(f, xs, out, from, to);
+        }
+
+        @Override
+        public String getExpression() {
+            return "d/dx " + f.getExpression();
+        }
     }
 }
@@ -1,24 +1,113 @@
 package solver;
 
+import functions.DualFunction;
 import functions.Function;
+import functions.PolynomialFunction;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 
+/**
+ * Local extrema of f in [start, end]. The samples on the grid (shared through
+ * {@link SampleStore}) only bracket each candidate; it is then refined, by Brent's root
+ * finder on f' when exact slopes are available and by Brent's minimizer on f otherwise,
+ * so results are not tied to the step. Brackets around a pole or jump of a function that
+ * knows its domain are skipped. Polynomials skip the grid altogether.
+ */
 public class ExtremaFinder {
-    public static List<Double> findExtrema(Function f, double start, double end, double step) {
-        List<Double> extrema = new ArrayList<>();
+    private static final double SQRT_EPS = Math.sqrt(Math.ulp(1.0));
 
-        for (double x = start + step; x <= end - step; x += step) {
-            double y1 = f.evaluate(x - step);
-            double y2 = f.evaluate(x);
-            double y3 = f.evaluate(x + step);
+    public static List<Extremum> findExtrema(Function f, double start, double end, double step) {
+        PolynomialFunction p = PolynomialRoots.of(f);
+        if (p != null) return findPolynomial(p, start, end);
+        if (f instanceof DualFunction) return findBySlope((DualFunction) f, start, end, step);
 
-            if ((y2 > y1 && y2 > y3) || (y2 < y1 && y2 < y3)) {
-                extrema.add(x);
+        int count = ParallelScanner.count(start, end, step);
+        double[] ys = SampleStore.values(f, start, step, count);
+        double[] breaks = Breaks.of(f, start, end);
+        DoubleUnaryOperator negated = x -> -f.evaluate(x);
+        return ParallelScanner.scan(start, step, count, 1, (xs, offset, lo, hi, extrema) -> {
+            for (int k = Math.max(lo, 1); k < Math.min(hi, xs.length - 1); k++) {
+                double y1 = ys[offset + k - 1];
+                double y2 = ys[offset + k];
+                double y3 = ys[offset + k + 1];
+                if (Breaks.within(breaks, xs[k - 1], xs[k + 1])) continue;
+
+                // The sample above (or below) both neighbours brackets a maximum (or minimum).
+                // On a parabola the refined value moves past y2 by less than the neighbours'
+                // spread; running off much further means the bracket held a pole
+                double spread = Math.abs(y2 - y1) + Math.abs(y2 - y3);
+                if (y2 > y1 && y2 > y3) {
+                    Extremum min = MinimumRefiner.minimize(negated, xs[k - 1], xs[k + 1], xs[k], -y2);
+                    if (-min.y - y2 <= spread)
+                        extrema.add(new Extremum(min.x, -min.y, Extremum.Type.MAXIMUM, min.precision));
+                } else if (y2 < y1 && y2 < y3) {
+                    Extremum min = MinimumRefiner.minimize(f::evaluate, xs[k - 1], xs[k + 1], xs[k], y2);
+                    if (y2 - min.y <= spread) extrema.add(min);
+                }
             }
-        }
+        });
+    }
 
+    // Stationary points are the roots of p'; the sign of p' on either side gives the type
+    private static List<Extremum> findPolynomial(PolynomialFunction p, double start, double end) {
+        PolynomialFunction slope = p.derivative();
+        double[] roots = PolynomialRoots.realRoots(slope, start, end);
+        List<Extremum> extrema = new ArrayList<>();
+        for (int i = 0; i < roots.length; i++) {
+            double r = roots[i];
+            if (r <= start || r >= end) continue;
+            double left = slope.evaluate(0.5 * ((i > 0 ? roots[i - 1] : start) + r));
+            double right = slope.evaluate(0.5 * (r + (i + 1 < roots.length ? roots[i + 1] : end)));
+            Extremum.Type type = left > 0 && right < 0 ? Extremum.Type.MAXIMUM
+                    : left < 0 && right > 0 ? Extremum.Type.MINIMUM : Extremum.Type.SADDLE;
+            // A root where p' keeps its sign is a multiple one, resolvable only to about sqrt(eps)
+            double precision = type == Extremum.Type.SADDLE ? SQRT_EPS * (1 + Math.abs(r)) : RootRefiner.precision(r);
+            extrema.add(new Extremum(r, p.evaluate(r), type, precision));
+        }
         return extrema;
     }
+
+    // With exact slopes an extremum is a sign change of f', pinned down by Brent's method
+    // on f' instead of being reported at the nearest grid point
+    private static List<Extremum> findBySlope(DualFunction f, double start, double end, double step) {
+        int count = ParallelScanner.count(start, end, step);
+        double[] slopes = SampleStore.slopes(f, start, step, count);
+        double[] ys = SampleStore.values(f, start, step, count);
+        double[] breaks = Breaks.of(f, start, end);
+        return ParallelScanner.scan(start, step, count, 1, (xs, offset, lo, hi, extrema) -> {
+            int n = xs.length;
+            double[] pair = new double[2];
+            DoubleUnaryOperator slope = x -> {
+                f.evaluateDual(x, pair);
+                return pair[1];
+            };
+
+            for (int k = lo; k < Math.min(hi, n - 1); k++) {
+                int i = offset + k;
+                double s1 = slopes[i], s2 = slopes[i + 1];
+                if (!Double.isFinite(ys[i]) || !Double.isFinite(ys[i + 1])) continue;
+                if (Breaks.within(breaks, xs[k], xs[k + 1])) continue;
+
+                if (s1 == 0) {
+                    // Flat exactly on the grid: the slope on either side gives the type
+                    if (i == 0) continue;
+                    double before = slopes[i - 1];
+                    Extremum.Type type = before > 0 && s2 < 0 ? Extremum.Type.MAXIMUM
+                            : before < 0 && s2 > 0 ? Extremum.Type.MINIMUM : Extremum.Type.SADDLE;
+                    if (before != 0 && s2 != 0) extrema.add(new Extremum(xs[k], ys[i], type, 0));
+                } else if (s1 * s2 < 0) {
+                    Root root = RootRefiner.refine(slope, xs[k], s1, xs[k + 1], s2);
+                    double y = f.evaluate(root.x);
+                    // A pole also flips the slope's sign, but there |f'| grows instead of vanishing
+                    if (root.converged && Math.abs(root.value) <= Math.max(Math.abs(s1), Math.abs(s2))
+                            && Double.isFinite(y)) {
+                        Extremum.Type type = s1 > 0 ? Extremum.Type.MAXIMUM : Extremum.Type.MINIMUM;
+                        extrema.add(new Extremum(root.x, y, type, RootRefiner.precision(root.x)));
+                    }
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,32 @@
+package solver;
+
+/** A local extremum or saddle point found by {@link ExtremaFinder}. */
+public final class Extremum {
+    public enum Type {
+        MAXIMUM("Maximum"), MINIMUM("Minimum"), SADDLE("Saddle point");
+
+        public final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+    }
+
+    public final double x;
+    public final double y;
+    public final Type type;
+    /** Bound on the distance from x to the true stationary point. */
+    public final double precision;
+
+    Extremum(double x, double y, Type type, double precision) {
+        this.x = x;
+        this.y = y;
+        this.type = type;
+        this.precision = precision;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[x=%.15g ± %.1g, y=%.15g]", type.label, x, precision, y);
+    }
+}
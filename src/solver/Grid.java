@@ -0,0 +1,20 @@
+package solver;
+
+/**
+ * Evenly spaced sample points shared by the scanning solvers. Points are start + k * step
+ * rather than a running sum, so long scans don't drift; values on them come from
+ * {@link SampleStore}.
+ */
+final class Grid {
+    private Grid() {
+    }
+
+    /** Number of points start + k * step with k >= 0 that stay below end (or reach it when inclusive). */
+    static int count(double start, double end, double step, boolean inclusive) {
+        if (!(step > 0) || !(end >= start)) return 0;
+        double span = (end - start) / step;
+        int n = (int) Math.min(Integer.MAX_VALUE - 8, Math.ceil(span));
+        if (inclusive && start + n * step <= end) n++;
+        return n;
+    }
+}
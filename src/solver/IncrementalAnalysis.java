@@ -0,0 +1,209 @@
+package solver;
+
+import functions.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extrema, inflections and intersections of a set of functions, computed on demand for
+ * whatever x range is asked for. The x axis is cut into fixed blocks aligned to
+ * multiples of BLOCK; a block is analysed the first time a requested range touches it
+ * and never again, and its results are merged into what is already known. Each block is
+ * scanned with one grid step of overlap on either side, so features next to a block
+ * edge are not lost, and keeps only features in [start, start + BLOCK), so none are
+ * found twice.
+ * <p>
+ * Extrema and inflections are kept per function, so {@link #withReplaced} can swap some
+ * functions for others (a parameter changed) and keep everything known about the rest.
+ */
+public class IncrementalAnalysis {
+    public static final double BLOCK = 10;
+    public static final double EXTREMA_STEP = 0.1;
+    public static final double INTERSECTION_STEP = 0.01;
+
+    private final List<Function> functions;
+    private final boolean findExtrema, findInflections, findIntersections;
+    private final Map<Function, Track> tracks = new IdentityHashMap<>();
+    private final Set<Long> covered = new HashSet<>();
+    // Covered blocks whose intersections with these functions are still to be found
+    private final Map<Long, Set<Function>> stale = new HashMap<>();
+    private final List<Intersection> intersections = new ArrayList<>();
+
+    /** What is known about one function; shared between analyses that both contain it. */
+    private static final class Track {
+        final Set<Long> covered = new HashSet<>();
+        final List<Extremum> extrema = new ArrayList<>();
+        final List<Point> inflections = new ArrayList<>();
+    }
+
+    public IncrementalAnalysis(List<? extends Function> functions, boolean findExtrema, boolean findInflections,
+                               boolean findIntersections) {
+        this.functions = new ArrayList<>(functions);
+        this.findExtrema = findExtrema;
+        this.findInflections = findInflections;
+        this.findIntersections = findIntersections && functions.size() > 1;
+        for (Function f : this.functions) tracks.putIfAbsent(f, new Track());
+    }
+
+    /**
+     * The same analysis with each key of replacements swapped for its value. Results for
+     * the other functions, and intersections between them, carry over; the new functions
+     * are analysed again as ranges are requested.
+     */
+    public IncrementalAnalysis withReplaced(Map<Function, ? extends Function> replacements) {
+        List<Function> next = new ArrayList<>(functions.size());
+        Set<Function> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Function> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Function f : functions) {
+            Function g = replacements.get(f);
+            if (g != null && g != f) {
+                removed.add(f);
+                added.add(g);
+                next.add(g);
+            } else {
+                next.add(f);
+            }
+        }
+        IncrementalAnalysis result = new IncrementalAnalysis(next, findExtrema, findInflections, findIntersections);
+        synchronized (this) {
+            for (Function f : next) {
+                Track t = tracks.get(f);
+                if (t != null) result.tracks.put(f, t);
+            }
+            // Replacements keep their position, so the indices of the survivors stay valid
+            for (Intersection p : intersections) {
+                if (!removed.contains(p.first) && !removed.contains(p.second)) result.intersections.add(p);
+            }
+            result.covered.addAll(covered);
+            for (Long block : covered) {
+                Set<Function> s = Collections.newSetFromMap(new IdentityHashMap<>());
+                s.addAll(added);
+                Set<Function> before = stale.get(block);
+                if (before != null) {
+                    for (Function f : before) s.add(removed.contains(f) ? replacements.get(f) : f);
+                }
+                if (!s.isEmpty()) result.stale.put(block, s);
+            }
+        }
+        return result;
+    }
+
+    /** Analyses the blocks of [lo, hi] not covered yet; returns whether there were any. */
+    public boolean extend(double lo, double hi) {
+        if (!(hi >= lo) || Double.isInfinite(lo) || Double.isInfinite(hi)) return false;
+        long first = (long) Math.floor(lo / BLOCK), last = (long) Math.floor(hi / BLOCK);
+        boolean extended = false;
+        for (long block = first; block <= last; block++) {
+            for (Function f : functions) {
+                Track t = tracks.get(f);
+                synchronized (t) {
+                    if (t.covered.contains(block)) continue;
+                }
+                analyse(f, t, block);
+                extended = true;
+            }
+            if (findIntersections) {
+                Set<Function> only;
+                synchronized (this) {
+                    if (covered.contains(block) && !stale.containsKey(block)) continue;
+                    only = stale.get(block);
+                }
+                intersect(block, only);
+                extended = true;
+            }
+        }
+        return extended;
+    }
+
+    /** Whether every block of [lo, hi] has been analysed. */
+    public boolean covers(double lo, double hi) {
+        long first = (long) Math.floor(lo / BLOCK), last = (long) Math.floor(hi / BLOCK);
+        for (Track t : tracks.values()) {
+            synchronized (t) {
+                for (long block = first; block <= last; block++) {
+                    if (!t.covered.contains(block)) return false;
+                }
+            }
+        }
+        if (!findIntersections) return true;
+        synchronized (this) {
+            for (long block = first; block <= last; block++) {
+                if (!covered.contains(block) || stale.containsKey(block)) return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Extremum> getExtrema() {
+        List<Extremum> out = new ArrayList<>();
+        for (Function f : functions) {
+            Track t = tracks.get(f);
+            synchronized (t) {
+                out.addAll(t.extrema);
+            }
+        }
+        return out;
+    }
+
+    public List<Point> getInflections() {
+        List<Point> out = new ArrayList<>();
+        for (Function f : functions) {
+            Track t = tracks.get(f);
+            synchronized (t) {
+                out.addAll(t.inflections);
+            }
+        }
+        return out;
+    }
+
+    public synchronized List<Intersection> getIntersections() {
+        return new ArrayList<>(intersections);
+    }
+
+    private void analyse(Function f, Track t, long block) {
+        double a = block * BLOCK, b = a + BLOCK;
+        List<Extremum> newExtrema = new ArrayList<>();
+        List<Point> newInflections = new ArrayList<>();
+        if (findExtrema) {
+            for (Extremum e : ExtremaFinder.findExtrema(f, a - EXTREMA_STEP, b + EXTREMA_STEP, EXTREMA_STEP)) {
+                if (e.x >= a && e.x < b) newExtrema.add(e);
+            }
+        }
+        if (findInflections) {
+            for (double x : InflectionFinder.findInflectionPoints(f, a - EXTREMA_STEP, b + EXTREMA_STEP, EXTREMA_STEP)) {
+                if (x >= a && x < b) newInflections.add(new Point(x, f.evaluate(x)));
+            }
+        }
+        synchronized (t) {
+            if (!t.covered.add(block)) return;
+            t.extrema.addAll(newExtrema);
+            t.inflections.addAll(newInflections);
+        }
+    }
+
+    // With only set, keeps just the crossings that involve one of those functions
+    private void intersect(long block, Set<Function> only) {
+        double a = block * BLOCK, b = a + BLOCK;
+        List<Intersection> found = new ArrayList<>();
+        for (Intersection p : IntersectionEngine.findAll(functions, a - INTERSECTION_STEP, b + INTERSECTION_STEP,
+                INTERSECTION_STEP)) {
+            if (p.x >= a && p.x < b && (only == null || only.contains(p.first) || only.contains(p.second))) found.add(p);
+        }
+        synchronized (this) {
+            if (only == null) {
+                if (!covered.add(block)) return;
+            } else {
+                if (stale.get(block) != only) return;
+                stale.remove(block);
+            }
+            intersections.addAll(found);
+        }
+    }
+}
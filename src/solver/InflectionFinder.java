@@ -1,31 +1,58 @@
 package solver;
 
 import functions.Function;
+import functions.PolynomialFunction;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class InflectionFinder {
+    private static final double H = 0.001;
+
     public static List<Double> findInflectionPoints(Function f, double start, double end, double step) {
-        List<Double> inflections = new ArrayList<>();
+        PolynomialFunction p = PolynomialRoots.of(f);
+        if (p != null) return PolynomialRoots.signChanges(p.derivative().derivative(), start, end);
 
-        for (double x = start + step; x <= end - step; x += step) {
-            double secondDerivativeLeft = secondDerivative(f, x - step);
-            double secondDerivativeRight = secondDerivative(f, x + step);
+        int count = ParallelScanner.count(start, end, step);
+        Function exact = DerivativeSolver.exact(f, 2);
+        double[] secondDerivative = secondDerivative(f, exact, start, step, count);
+        // f'' changes sign across a pole or jump without an inflection there
+        double[] breaks = Breaks.of(f, start, end);
+        return ParallelScanner.scan(start, step, count, 1, (xs, offset, lo, hi, inflections) -> {
+            for (int k = lo; k < Math.min(hi, xs.length - 1); k++) {
+                int i = offset + k;
+                double s1 = secondDerivative[i], s2 = secondDerivative[i + 1];
+                if (Breaks.within(breaks, xs[k] - H, xs[k + 1] + H)) continue;
 
-            if (secondDerivativeLeft * secondDerivativeRight < 0) {
-                inflections.add(x);
+                // A sign change belongs to the grid interval it starts in, so it is found once
+                // whichever grid covers it
+                if (s1 == 0) {
+                    if (i > 0 && secondDerivative[i - 1] * s2 < 0) inflections.add(xs[k]);
+                } else if (s1 * s2 < 0) {
+                    double x = refine(exact, xs[k], s1, xs[k + 1], s2);
+                    if (!Double.isNaN(x)) inflections.add(x);
+                }
             }
-        }
+        });
+    }
 
-        return inflections;
+    // Brent on the exact f'' when there is one, linear interpolation of the stencil otherwise
+    private static double refine(Function exact, double a, double s1, double b, double s2) {
+        if (exact == null) return a + (b - a) * s1 / (s1 - s2);
+        Root root = RootRefiner.refine(exact::evaluate, a, s1, b, s2);
+        // A pole of f'' flips its sign too, but there it grows instead of vanishing
+        return Math.abs(root.value) <= Math.max(Math.abs(s1), Math.abs(s2)) ? root.x : Double.NaN;
     }
 
-    private static double secondDerivative(Function f, double x) {
-        double h = 0.001;
-        double f1 = f.evaluate(x - h);
-        double f2 = f.evaluate(x);
-        double f3 = f.evaluate(x + h);
-        return (f1 - 2 * f2 + f3) / (h * h);
+    private static double[] secondDerivative(Function f, Function exact, double start, double step, int count) {
+        if (exact != null) return SampleStore.values(exact, start, step, count);
+
+        double[] f1 = SampleStore.values(f, start - H, step, count);
+        double[] f2 = SampleStore.values(f, start, step, count);
+        double[] f3 = SampleStore.values(f, start + H, step, count);
+        double[] out = new double[count];
+        for (int k = 0; k < count; k++) {
+            out[k] = (f1[k] - 2 * f2[k] + f3[k]) / (H * H);
+        }
+        return out;
     }
 }
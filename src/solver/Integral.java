@@ -0,0 +1,37 @@
+package solver;
+
+/**
+ * Result of an adaptive integration: the value, an estimate of its absolute error and
+ * what it cost. Stretches where the integrand could not be evaluated are left out of
+ * the value and reported through excludedWidth; a singular flag means the integrand
+ * blew up or stopped being defined at that end of the interval.
+ */
+public final class Integral {
+    public final double value;
+    public final double error;
+    public final int evaluations;
+    public final boolean converged;
+    public final boolean singularAtStart;
+    public final boolean singularAtEnd;
+    public final double excludedWidth;
+
+    Integral(double value, double error, int evaluations, boolean converged,
+             boolean singularAtStart, boolean singularAtEnd, double excludedWidth) {
+        this.value = value;
+        this.error = error;
+        this.evaluations = evaluations;
+        this.converged = converged;
+        this.singularAtStart = singularAtStart;
+        this.singularAtEnd = singularAtEnd;
+        this.excludedWidth = excludedWidth;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Integral[%.12g ± %.2g, evaluations=%d%s%s%s%s]", value, error, evaluations,
+                converged ? "" : ", not converged",
+                singularAtStart ? ", singular at start" : "",
+                singularAtEnd ? ", singular at end" : "",
+                excludedWidth > 0 ? String.format(", excluded %.3g", excludedWidth) : "");
+    }
+}
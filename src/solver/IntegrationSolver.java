@@ -2,12 +2,169 @@ package solver;
 
 import functions.Function;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
 public class IntegrationSolver {
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+    public static final int DEFAULT_MAX_EVALUATIONS = 30000;
+
+    // Kronrod nodes on [0, 1] (the odd ones are the Gauss nodes) and their weights, from QUADPACK's qk15
+    private static final double[] XGK = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0.0};
+    private static final double[] WGK = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+    private static final double[] WG = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327};
+    // Below this fraction of [a, b] an interval is not split any further
+    private static final double MIN_WIDTH = 0x1p-40;
+
+    public static Integral gaussKronrod(Function f, double a, double b) {
+        return gaussKronrod(f, a, b, DEFAULT_TOLERANCE, DEFAULT_MAX_EVALUATIONS);
+    }
+
+    /**
+     * Adaptive G7/K15 quadrature: the interval with the largest error estimate is split
+     * until the total estimated error is within tolerance (absolute, or relative to the
+     * value, whichever is looser) or the evaluation budget runs out.
+     */
+    public static Integral gaussKronrod(Function f, double a, double b, double tolerance, int maxEvaluations) {
+        if (a == b) return new Integral(0, 0, 0, true, false, false, 0);
+        if (a > b) {
+            Integral r = gaussKronrod(f, b, a, tolerance, maxEvaluations);
+            return new Integral(-r.value, r.error, r.evaluations, r.converged,
+                    r.singularAtEnd, r.singularAtStart, r.excludedWidth);
+        }
+
+        double minWidth = (b - a) * MIN_WIDTH;
+        double[] xs = new double[15];
+        double[] ys = new double[15];
+        PriorityQueue<Segment> active = new PriorityQueue<>((p, q) -> Double.compare(q.error, p.error));
+        List<Segment> done = new ArrayList<>();
+
+        Segment whole = Segment.rule(f, a, b, xs, ys);
+        active.add(whole);
+        int evaluations = 15;
+        // Running totals over finite segments; undefined ones are only counted
+        double value = whole.value, error = whole.finite ? whole.error : 0;
+        int undefined = whole.finite ? 0 : 1;
+        double frozen = 0, excluded = 0;
+        boolean singularAtStart = false, singularAtEnd = false;
+
+        while (!active.isEmpty() && (undefined > 0 || error - frozen > Math.max(tolerance, tolerance * Math.abs(value)))
+                && evaluations + 30 <= maxEvaluations) {
+            Segment worst = active.poll();
+            if (worst.b - worst.a <= minWidth) {
+                // Can't resolve it any further. Still misbehaving at an end of [a, b] means a
+                // singularity there; an undefined stretch is dropped and reported
+                if (worst.a == a) singularAtStart = true;
+                if (worst.b == b) singularAtEnd = true;
+                if (worst.finite) {
+                    done.add(worst);
+                    frozen += worst.error;
+                } else {
+                    undefined--;
+                    excluded += worst.b - worst.a;
+                }
+                continue;
+            }
+
+            double mid = 0.5 * (worst.a + worst.b);
+            Segment left = Segment.rule(f, worst.a, mid, xs, ys);
+            Segment right = Segment.rule(f, mid, worst.b, xs, ys);
+            evaluations += 30;
+            if (worst.finite) {
+                value -= worst.value;
+                error -= worst.error;
+            } else {
+                undefined--;
+            }
+            for (Segment half : new Segment[]{left, right}) {
+                if (half.finite) {
+                    value += half.value;
+                    error += half.error;
+                    active.add(half);
+                } else if (half.undefined) {
+                    // Nowhere defined: outside the domain rather than a pole, nothing to refine
+                    done.add(half);
+                } else {
+                    undefined++;
+                    active.add(half);
+                }
+            }
+        }
+
+        // Sum the pieces afresh so rounding in the running totals doesn't leak into the result
+        done.addAll(active);
+        value = 0;
+        error = 0;
+        for (Segment seg : done) {
+            if (seg.finite) {
+                value += seg.value;
+                error += seg.error;
+            } else {
+                excluded += seg.b - seg.a;
+                if (seg.a == a) singularAtStart = true;
+                if (seg.b == b) singularAtEnd = true;
+            }
+        }
+        boolean converged = excluded == 0 && error <= Math.max(tolerance, tolerance * Math.abs(value));
+        return new Integral(value, error, evaluations, converged, singularAtStart, singularAtEnd, excluded);
+    }
+
+    private static final class Segment {
+        final double a, b, value, error;
+        final boolean finite, undefined;
+
+        Segment(double a, double b, double value, double error, boolean finite, boolean undefined) {
+            this.a = a;
+            this.b = b;
+            this.value = value;
+            this.error = error;
+            this.finite = finite;
+            this.undefined = undefined;
+        }
+
+        static Segment rule(Function f, double a, double b, double[] xs, double[] ys) {
+            double center = 0.5 * (a + b), half = 0.5 * (b - a);
+            for (int j = 0; j < 7; j++) {
+                xs[2 * j] = center - half * XGK[j];
+                xs[2 * j + 1] = center + half * XGK[j];
+            }
+            xs[14] = center;
+            f.evaluate(xs, ys, 0, 15);
+
+            double kronrod = WGK[7] * ys[14];
+            double gauss = WG[3] * ys[14];
+            boolean finite = Double.isFinite(ys[14]);
+            boolean undefined = Double.isNaN(ys[14]);
+            for (int j = 0; j < 7; j++) {
+                double pair = ys[2 * j] + ys[2 * j + 1];
+                finite &= Double.isFinite(pair);
+                undefined &= Double.isNaN(ys[2 * j]) && Double.isNaN(ys[2 * j + 1]);
+                kronrod += WGK[j] * pair;
+                if ((j & 1) == 1) gauss += WG[j / 2] * pair;
+            }
+            if (!finite) return new Segment(a, b, 0, Double.POSITIVE_INFINITY, false, undefined);
+            return new Segment(a, b, kronrod * half, Math.abs(kronrod - gauss) * half, true, false);
+        }
+    }
+
     public static double integrate(Function f, double a, double b, double step) {
+        int count = Grid.count(a, b, step, false) + 1;
+        double[] ys = SampleStore.values(f, a, step, count);
         double area = 0.0;
-        for (double x = a; x < b; x += step) {
-            double y1 = f.evaluate(x);
-            double y2 = f.evaluate(x + step);
+        for (int k = 0; k < count - 1; k++) {
+            double y1 = ys[k];
+            double y2 = ys[k + 1];
             if (Double.isNaN(y1) || Double.isNaN(y2)) continue;
             area += 0.5 * (y1 + y2) * step;
         }
@@ -15,12 +172,15 @@ public class IntegrationSolver {
     }
 
     public static double integrateBetween(Function f1, Function f2, double a, double b, double step) {
+        int count = Grid.count(a, b, step, false) + 1;
+        double[] y1 = SampleStore.values(f1, a, step, count);
+        double[] y2 = SampleStore.values(f2, a, step, count);
         double area = 0.0;
-        for (double x = a; x < b; x += step) {
-            double y1a = f1.evaluate(x);
-            double y2a = f2.evaluate(x);
-            double y1b = f1.evaluate(x + step);
-            double y2b = f2.evaluate(x + step);
+        for (int k = 0; k < count - 1; k++) {
+            double y1a = y1[k];
+            double y2a = y2[k];
+            double y1b = y1[k + 1];
+            double y2b = y2[k + 1];
 
             if (Double.isNaN(y1a) || Double.isNaN(y2a) || Double.isNaN(y1b) || Double.isNaN(y2b)) continue;
 
@@ -0,0 +1,28 @@
+package solver;
+
+import functions.Function;
+
+/** A crossing of two functions, tagged with the pair and their positions in the input list. */
+public final class Intersection {
+    public final double x;
+    public final double y;
+    public final Function first;
+    public final Function second;
+    public final int firstIndex;
+    public final int secondIndex;
+
+    Intersection(double x, double y, Function first, Function second, int firstIndex, int secondIndex) {
+        this.x = x;
+        this.y = y;
+        this.first = first;
+        this.second = second;
+        this.firstIndex = firstIndex;
+        this.secondIndex = secondIndex;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Intersection[x=%.10g, y=%.10g, %s & %s]", x, y,
+                first.getExpression(), second.getExpression());
+    }
+}
@@ -0,0 +1,212 @@
+package solver;
+
+import functions.Function;
+import functions.PolynomialFunction;
+import parser.Node;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * All-pairs intersections of many functions. Each function is sampled once on a shared
+ * grid, so every grid cell is a slab in which each curve is one segment. Sweeping the
+ * slabs left to right keeps the functions ordered by value; between the two edges of a
+ * slab the order only changes where curves cross, so re-sorting it by insertion costs
+ * O(n + crossings) and every swap it makes is one intersecting pair (the
+ * Bentley-Ottmann event set for x-monotone curves). Crossings are refined with Brent's
+ * method on the pair's difference, and split first at any pole or jump of either curve
+ * inside the slab. Neighbours whose gap dips towards zero without a sign change are
+ * searched for tangent meetings and close double crossings, with interval isolation
+ * when both are parsed expressions. Pairs of polynomials skip the sweep and are solved
+ * exactly by {@link PolynomialRoots}. Slabs are split across the solver threads.
+ */
+public class IntersectionEngine {
+    private static final double TOUCH = 1e-3;
+    private static final double TANGENT = 1e-9;
+
+    public static List<Intersection> findAll(List<? extends Function> functions, double start, double end, double step) {
+        int n = functions.size();
+        int count = Grid.count(start, end, step, false) + 1;
+        double[][] ys = new double[n][];
+        double[][] breaks = new double[n][];
+        double[] tolerance = new double[n];
+        PolynomialFunction[] poly = new PolynomialFunction[n];
+        for (int i = 0; i < n; i++) {
+            ys[i] = SampleStore.values(functions.get(i), start, step, count);
+            breaks[i] = Breaks.of(functions.get(i), start, end);
+            tolerance[i] = Breaks.tolerance(functions.get(i), start, end);
+            poly[i] = PolynomialRoots.of(functions.get(i));
+        }
+
+        List<Intersection> all = new ArrayList<>(ParallelScanner.scan(start, step, count, 1, (xs, offset, lo, hi, found) -> {
+            int[] order = new int[n];
+            int[] active = new int[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+
+            for (int k = lo; k < Math.min(hi, xs.length - 1); k++) {
+                int left = offset + k, right = left + 1;
+
+                // Curves undefined at either edge have no segment in this slab
+                int m = 0;
+                for (int i = 0; i < n; i++) {
+                    int f = order[i];
+                    if (Double.isFinite(ys[f][left]) && Double.isFinite(ys[f][right])) active[m++] = f;
+                }
+                int inactive = m;
+                for (int i = 0; i < n; i++) {
+                    int f = order[i];
+                    if (!Double.isFinite(ys[f][left]) || !Double.isFinite(ys[f][right])) active[inactive++] = f;
+                }
+
+                // Usually already in order, since the last slab ended sorted by these values
+                sort(active, m, ys, left);
+
+                // Curves meeting exactly on the left edge cross here whatever happens next
+                for (int a = 0; a < m; ) {
+                    int b = a + 1;
+                    while (b < m && ys[active[b]][left] == ys[active[a]][left]) b++;
+                    for (int p = a; p < b; p++) {
+                        for (int q = p + 1; q < b; q++) {
+                            if (poly[active[p]] != null && poly[active[q]] != null) continue;
+                            add(found, functions, active[p], active[q], xs[k], ys[active[p]][left]);
+                        }
+                    }
+                    a = b;
+                }
+
+                // Re-sorting by the right edge swaps exactly the pairs that cross in between
+                for (int i = 1; i < m; i++) {
+                    int f = active[i];
+                    int j = i - 1;
+                    while (j >= 0 && ys[active[j]][right] > ys[f][right]) {
+                        int g = active[j];
+                        if (ys[g][left] != ys[f][left] && (poly[g] == null || poly[f] == null)) {
+                            crossing(found, functions, breaks, tolerance, g, f, xs[k], xs[k + 1],
+                                    ys[g][left] - ys[f][left], ys[g][right] - ys[f][right]);
+                        }
+                        active[j + 1] = g;
+                        j--;
+                    }
+                    active[j + 1] = f;
+                }
+
+                // Neighbours that come close without crossing may touch or cross twice within a slab
+                if (right + 1 < count) {
+                    for (int i = 1; i < m; i++) {
+                        int f = active[i - 1], g = active[i];
+                        if ((poly[f] == null || poly[g] == null) && Double.isFinite(ys[f][right + 1]) && Double.isFinite(ys[g][right + 1])
+                                && nearTouch(ys[g][left] - ys[f][left], ys[g][right] - ys[f][right],
+                                ys[g][right + 1] - ys[f][right + 1])) {
+                            touch(found, functions, breaks, tolerance, g, f, xs[k], xs[k + 1] + step);
+                        }
+                    }
+                }
+
+                int[] swap = order;
+                order = active;
+                active = swap;
+            }
+            found.sort(Comparator.comparingDouble(p -> p.x));
+        }));
+
+        // Two polynomials meet exactly at the real roots of their difference
+        int sampled = all.size();
+        for (int i = 0; i < n; i++) {
+            if (poly[i] == null) continue;
+            for (int j = i + 1; j < n; j++) {
+                if (poly[j] == null) continue;
+                for (double x : PolynomialRoots.realRoots(poly[i].minus(poly[j]), start, end)) {
+                    add(all, functions, i, j, x, functions.get(i).evaluate(x));
+                }
+            }
+        }
+        if (all.size() > sampled) all.sort(Comparator.comparingDouble(p -> p.x));
+        return all;
+    }
+
+    // Insertion sort of the first m indices by ys[.][column]
+    private static void sort(int[] idx, int m, double[][] ys, int column) {
+        for (int i = 1; i < m; i++) {
+            int f = idx[i];
+            double v = ys[f][column];
+            int j = i - 1;
+            while (j >= 0 && ys[idx[j]][column] > v) {
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = f;
+        }
+    }
+
+    // d at three grid points dips to a minimum in the middle, and the parabola through
+    // them gets close to zero
+    private static boolean nearTouch(double d1, double d2, double d3) {
+        if (!(d1 > d2 && d3 >= d2 && d2 > 0)) return false;
+        double a = (d1 - 2 * d2 + d3) / 2, b = (d3 - d1) / 2;
+        return d2 - b * b / (4 * a) <= TOUCH * Math.max(d1, d3);
+    }
+
+    // Parsed pairs are isolated with interval arithmetic as in IntersectionFinder; others
+    // are searched for a minimum of the difference that reaches zero
+    private static void touch(List<Intersection> found, List<? extends Function> functions, double[][] breaks,
+                              double[] tolerance, int i, int j, double a, double b) {
+        double tol = Math.max(tolerance[i], tolerance[j]);
+        Function f1 = functions.get(i), f2 = functions.get(j);
+        DoubleUnaryOperator difference = x -> f1.evaluate(x) - f2.evaluate(x);
+        Node g = IntersectionFinder.difference(f1, f2);
+        if (g != null) {
+            List<Root> roots = IntersectionFinder.isolate(g, difference, Breaks.merge(breaks[i], breaks[j]), tol, a, b);
+            if (roots != null) {
+                for (Root root : roots) {
+                    double y = f1.evaluate(root.x);
+                    if (!Double.isNaN(y)) add(found, functions, i, j, root.x, y);
+                }
+                return;
+            }
+        }
+        if (Breaks.within(breaks[i], a - tol, b + tol) || Breaks.within(breaks[j], a - tol, b + tol)) return;
+        double m = 0.5 * (a + b);
+        Extremum min = MinimumRefiner.minimize(difference, a, b, m, difference.applyAsDouble(m));
+        double y = f1.evaluate(min.x);
+        if (Double.isNaN(min.y) || Double.isNaN(y)) return;
+        if (min.y < 0) {
+            // Crossed twice: one root either side of the dip
+            for (Root root : new Root[]{
+                    RootRefiner.refine(difference, a, difference.applyAsDouble(a), min.x, min.y),
+                    RootRefiner.refine(difference, min.x, min.y, b, difference.applyAsDouble(b))}) {
+                if (!Double.isNaN(root.x)) add(found, functions, i, j, root.x, f1.evaluate(root.x));
+            }
+        } else if (min.y <= TANGENT * (1 + Math.abs(y))) {
+            add(found, functions, i, j, min.x, y);
+        }
+    }
+
+    private static void crossing(List<Intersection> found, List<? extends Function> functions, double[][] breaks,
+                                 double[] tolerance, int i, int j, double a, double b, double da, double db) {
+        double tol = Math.max(tolerance[i], tolerance[j]);
+        Function f1 = functions.get(i), f2 = functions.get(j);
+        DoubleUnaryOperator difference = x -> f1.evaluate(x) - f2.evaluate(x);
+        if (Breaks.within(breaks[i], a - tol, b + tol) || Breaks.within(breaks[j], a - tol, b + tol)) {
+            List<Root> roots = new ArrayList<>();
+            Breaks.roots(difference, a, da, b, db, Breaks.merge(breaks[i], breaks[j]), tol, roots);
+            for (Root root : roots) {
+                double y = f1.evaluate(root.x);
+                if (!Double.isNaN(y)) add(found, functions, i, j, root.x, y);
+            }
+            return;
+        }
+        Root root = RootRefiner.refine(difference, a, da, b, db);
+        // A pole also flips the sign of the difference, but there it grows instead of vanishing
+        if (Double.isNaN(root.x) || Math.abs(root.value) > Math.max(Math.abs(da), Math.abs(db))) return;
+        double y = f1.evaluate(root.x);
+        if (!Double.isNaN(y)) add(found, functions, i, j, root.x, y);
+    }
+
+    private static void add(List<Intersection> found, List<? extends Function> functions, int i, int j,
+                            double x, double y) {
+        int first = Math.min(i, j), second = Math.max(i, j);
+        found.add(new Intersection(x, y, functions.get(first), functions.get(second), first, second));
+    }
+}
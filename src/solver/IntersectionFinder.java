@@ -1,48 +1,99 @@
 package solver;
 
 import functions.Function;
+import functions.PolynomialFunction;
+import parser.FunctionParser.ParsedFunction;
+import parser.Node;
+import parser.Simplifier;
 
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 
 public class IntersectionFinder {
-    public static List<Point2D.Double> findIntersections(Function f1, Function f2, double start, double end, double step) {
-        List<Point2D.Double> points = new ArrayList<>();
+    public static List<Point> findIntersections(Function f1, Function f2, double start, double end, double step) {
+        DoubleUnaryOperator difference = x -> f1.evaluate(x) - f2.evaluate(x);
 
-        for (double x = start; x < end; x += step) {
-            double y1 = f1.evaluate(x);
-            double y2 = f2.evaluate(x);
-            double diff1 = y1 - y2;
-
-            double y1Next = f1.evaluate(x + step);
-            double y2Next = f2.evaluate(x + step);
-            double diff2 = y1Next - y2Next;
+        // Two polynomials meet at the real roots of their difference, tangent meetings included
+        PolynomialFunction p1 = PolynomialRoots.of(f1), p2 = PolynomialRoots.of(f2);
+        if (p1 != null && p2 != null) {
+            List<Point> points = new ArrayList<>();
+            for (double x : PolynomialRoots.realRoots(p1.minus(p2), start, end)) {
+                points.add(new Point(x, f1.evaluate(x)));
+            }
+            return points;
+        }
 
-            if (Double.isNaN(diff1) || Double.isNaN(diff2)) continue;
+        double[] breaks = Breaks.of(f1, f2, start, end);
+        double tolerance = Breaks.tolerance(f1, f2, start, end);
 
-            if (diff1 * diff2 <= 0) {
-                double rootX = refine(f1, f2, x, x + step);
-                double rootY = f1.evaluate(rootX);
-                if (!Double.isNaN(rootX) && !Double.isNaN(rootY))
-                    points.add(new Point2D.Double(rootX, rootY));
+        // Parsed expressions can be isolated with interval arithmetic, which cannot miss
+        // tangent intersections or roots closer together than the step
+        Node g = difference(f1, f2);
+        if (g != null && !g.isConstant(0)) {
+            List<Root> roots = isolate(g, difference, breaks, tolerance, start, end);
+            if (roots != null) {
+                List<Point> points = new ArrayList<>(roots.size());
+                for (Root root : roots) {
+                    double rootY = f1.evaluate(root.x);
+                    if (!Double.isNaN(rootY)) points.add(new Point(root.x, rootY));
+                }
+                return points;
             }
         }
 
-        return points;
-    }
+        int count = Grid.count(start, end, step, false) + 1;
+        double[] y1 = SampleStore.values(f1, start, step, count);
+        double[] y2 = SampleStore.values(f2, start, step, count);
+        return ParallelScanner.scan(start, step, count, 1, (xs, offset, lo, hi, points) -> {
+            for (int k = lo; k < Math.min(hi, xs.length - 1); k++) {
+                int i = offset + k;
+                double diff1 = y1[i] - y2[i];
+                double diff2 = y1[i + 1] - y2[i + 1];
+
+                if (Double.isNaN(diff1) || Double.isNaN(diff2)) continue;
 
-    private static double refine(Function f1, Function f2, double a, double b) {
-        for (int i = 0; i < 20; i++) {
-            double mid = (a + b) / 2.0;
-            double fa = f1.evaluate(a) - f2.evaluate(a);
-            double fm = f1.evaluate(mid) - f2.evaluate(mid);
+                if (Breaks.within(breaks, xs[k] - tolerance, xs[k + 1] + tolerance)) {
+                    List<Root> roots = new ArrayList<>();
+                    Breaks.roots(difference, xs[k], diff1, xs[k + 1], diff2, breaks, tolerance, roots);
+                    for (Root root : roots) {
+                        double rootY = f1.evaluate(root.x);
+                        if (!Double.isNaN(rootY)) points.add(new Point(root.x, rootY));
+                    }
+                    continue;
+                }
 
-            if (fa * fm <= 0)
-                b = mid;
-            else
-                a = mid;
+                // A root sitting exactly on a grid point belongs to the interval it starts
+                if (diff1 == 0 || diff1 * diff2 < 0) {
+                    double rootX = RootRefiner.refine(difference, xs[k], diff1, xs[k + 1], diff2).x;
+                    double rootY = f1.evaluate(rootX);
+                    if (!Double.isNaN(rootX) && !Double.isNaN(rootY))
+                        points.add(new Point(rootX, rootY));
+                }
+            }
+        });
+    }
+
+    // Piece by piece between the breaks, since the enclosure of g' knows nothing of a jump;
+    // null when any piece is too busy to isolate
+    static List<Root> isolate(Node g, DoubleUnaryOperator difference, double[] breaks, double tolerance,
+                              double start, double end) {
+        if (breaks.length == 0) return RootIsolator.isolate(g, difference, start, end);
+        double[] pieces = Breaks.pieces(breaks, tolerance, start, end);
+        List<Root> roots = new ArrayList<>();
+        for (int i = 0; i < pieces.length; i += 2) {
+            List<Root> piece = RootIsolator.isolate(g, difference, pieces[i], pieces[i + 1]);
+            if (piece == null) return null;
+            roots.addAll(piece);
         }
-        return (a + b) / 2.0;
+        return roots;
+    }
+
+    // f1 - f2 as a tree, or null when either side is not a parsed expression
+    static Node difference(Function f1, Function f2) {
+        if (!(f1 instanceof ParsedFunction) || !(f2 instanceof ParsedFunction)) return null;
+        Node a = ((ParsedFunction) f1).getTree(), b = ((ParsedFunction) f2).getTree();
+        if (a == null || b == null) return null;
+        return Simplifier.simplify(Node.binary(Node.Kind.SUB, a, b));
     }
 }
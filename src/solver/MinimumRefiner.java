@@ -0,0 +1,84 @@
+package solver;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Brent's method for the minimum of g inside a bracket [a, b]: golden-section steps,
+ * which always shrink the bracket, mixed with parabolic interpolation through the
+ * three best points, which converges superlinearly once g looks quadratic. Minimizing
+ * from values alone locates x only to about the square root of the machine epsilon,
+ * since g is flat to first order there; the value at x is accurate to machine precision.
+ */
+public class MinimumRefiner {
+    public static final double DEFAULT_ABSOLUTE_TOLERANCE = 1e-12;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    private static final double GOLDEN = 0.5 * (3 - Math.sqrt(5));
+    private static final double SQRT_EPS = Math.sqrt(Math.ulp(1.0));
+
+    /** The minimum of g in [a, b], starting from x inside it where g(x) = gx. */
+    public static Extremum minimize(DoubleUnaryOperator g, double a, double b, double x, double gx) {
+        return minimize(g, a, b, x, gx, DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    public static Extremum minimize(DoubleUnaryOperator g, double a, double b, double x, double gx,
+                                    double absoluteTolerance, int maxIterations) {
+        double w = x, v = x, gw = gx, gv = gx;
+        double d = 0, e = 0;
+        for (int i = 0; i < maxIterations; i++) {
+            double m = 0.5 * (a + b);
+            double tol = SQRT_EPS * Math.abs(x) + absoluteTolerance / 3;
+            double t2 = 2 * tol;
+            if (Math.abs(x - m) <= t2 - 0.5 * (b - a)) break;
+
+            boolean golden = true;
+            if (Math.abs(e) > tol) {
+                // Parabola through x, w and v
+                double r = (x - w) * (gx - gv);
+                double q = (x - v) * (gx - gw);
+                double p = (x - v) * q - (x - w) * r;
+                q = 2 * (q - r);
+                if (q > 0) p = -p;
+                else q = -q;
+                double s = e;
+                e = d;
+                if (Math.abs(p) < Math.abs(0.5 * q * s) && p > q * (a - x) && p < q * (b - x)) {
+                    d = p / q;
+                    double u = x + d;
+                    if (u - a < t2 || b - u < t2) d = x < m ? tol : -tol;
+                    golden = false;
+                }
+            }
+            if (golden) {
+                e = (x < m ? b : a) - x;
+                d = GOLDEN * e;
+            }
+
+            double u = Math.abs(d) >= tol ? x + d : x + (d > 0 ? tol : -tol);
+            double gu = g.applyAsDouble(u);
+            if (gu <= gx) {
+                if (u < x) b = x;
+                else a = x;
+                v = w;
+                gv = gw;
+                w = x;
+                gw = gx;
+                x = u;
+                gx = gu;
+            } else {
+                if (u < x) a = u;
+                else b = u;
+                if (gu <= gw || w == x) {
+                    v = w;
+                    gv = gw;
+                    w = u;
+                    gw = gu;
+                } else if (gu <= gv || v == x || v == w) {
+                    v = u;
+                    gv = gu;
+                }
+            }
+        }
+        return new Extremum(x, gx, Extremum.Type.MINIMUM, Math.max(x - a, b - x));
+    }
+}
@@ -0,0 +1,128 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a scan over the grid start + k * step, k in [0, count), on a fork/join pool.
+ * The grid is cut into chunks; each chunk is handed its own points plus a few
+ * neighbours on either side, so a detector looking at k - 1 and k + 1 sees the same
+ * values whichever chunk owns k. Every grid index is owned by exactly one chunk and
+ * chunk results are concatenated in grid order, so the output does not depend on
+ * scheduling or on the parallelism level.
+ */
+public class ParallelScanner {
+    private static final int MIN_CHUNK = 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // -Dplotter.solverThreads=N overrides the default of one thread per core
+    private static int parallelism = Math.max(1,
+            Integer.getInteger("plotter.solverThreads", Runtime.getRuntime().availableProcessors()));
+    private static ForkJoinPool pool;
+
+    /**
+     * Looks for results among the points of one chunk. xs holds the chunk's grid points
+     * with context on both sides, xs[i] being grid point offset + i; only positions in
+     * [lo, hi) belong to the chunk, and results must be added in increasing x order.
+     */
+    public interface Detector<T> {
+        void detect(double[] xs, int offset, int lo, int hi, List<T> out);
+    }
+
+    /** Threads used by later scans; 1 scans on the calling thread. */
+    public static synchronized void setParallelism(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+        if (threads == parallelism) return;
+        parallelism = threads;
+        if (pool != null) pool.shutdown();
+        pool = null;
+    }
+
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
+    /** Number of grid points start + k * step that do not pass end. */
+    public static int count(double start, double end, double step) {
+        return Grid.count(start, end, step, true);
+    }
+
+    /**
+     * Scans count grid points, giving each chunk overlap extra points of context on
+     * either side, and returns all detector results in grid order.
+     */
+    public static <T> List<T> scan(double start, double step, int count, int overlap, Detector<T> detector) {
+        if (count <= 0) return new ArrayList<>();
+        int threads = getParallelism();
+        int chunk = Math.max(MIN_CHUNK, (int) Math.ceil((double) count / (threads * CHUNKS_PER_THREAD)));
+        int chunks = (int) Math.ceil((double) count / chunk);
+
+        List<List<T>> parts = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) parts.add(new ArrayList<>());
+
+        Scan<T> scan = new Scan<>(start, step, count, overlap, chunk, detector, parts, 0, chunks);
+        if (threads == 1 || chunks == 1) {
+            for (int c = 0; c < chunks; c++) scan.scanChunk(c);
+        } else {
+            pool().invoke(scan);
+        }
+
+        List<T> results = new ArrayList<>();
+        for (List<T> part : parts) results.addAll(part);
+        return results;
+    }
+
+    private static class Scan<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double start, step;
+        private final int count, overlap, chunk;
+        private final Detector<T> detector;
+        private final List<List<T>> parts;
+        private final int firstChunk, lastChunk;
+
+        Scan(double start, double step, int count, int overlap, int chunk, Detector<T> detector,
+             List<List<T>> parts, int firstChunk, int lastChunk) {
+            this.start = start;
+            this.step = step;
+            this.count = count;
+            this.overlap = overlap;
+            this.chunk = chunk;
+            this.detector = detector;
+            this.parts = parts;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk > 1) {
+                int mid = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new Scan<>(start, step, count, overlap, chunk, detector, parts, firstChunk, mid),
+                        new Scan<>(start, step, count, overlap, chunk, detector, parts, mid, lastChunk));
+                return;
+            }
+            scanChunk(firstChunk);
+        }
+
+        void scanChunk(int c) {
+            int from = c * chunk;
+            int to = Math.min(count, from + chunk);
+            int windowFrom = Math.max(0, from - overlap);
+            int windowTo = Math.min(count, to + overlap);
+
+            double[] xs = new double[windowTo - windowFrom];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = start + (windowFrom + i) * step;
+            }
+            detector.detect(xs, windowFrom, from - windowFrom, to - windowFrom, parts.get(c));
+        }
+    }
+}
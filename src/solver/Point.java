@@ -0,0 +1,17 @@
+package solver;
+
+/** A point on a curve, as reported by the solvers that have nothing more to say about it. */
+public final class Point {
+    public final double x;
+    public final double y;
+
+    public Point(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Point[x=%.15g, y=%.15g]", x, y);
+    }
+}
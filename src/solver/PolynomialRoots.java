@@ -0,0 +1,152 @@
+package solver;
+
+import functions.Function;
+import functions.PolynomialFunction;
+import parser.FunctionParser.ParsedFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Real roots of polynomials by Sturm sequences. The number of sign changes in the
+ * sequence p, p', -rem(p, p'), ... at a and at b differs by exactly the number of distinct
+ * roots in (a, b], so bisecting on that count isolates every root, multiple roots
+ * included, without sampling. An isolated root is then polished with Brent's method when
+ * p changes sign across it, and by further Sturm bisection when it does not (roots of
+ * even multiplicity).
+ */
+public class PolynomialRoots {
+    private static final int MAX_DEPTH = 200;
+
+    private PolynomialRoots() {
+    }
+
+    /** f as a polynomial: itself, or a parsed expression written as one; null otherwise. */
+    public static PolynomialFunction of(Function f) {
+        if (f instanceof PolynomialFunction) return (PolynomialFunction) f;
+        if (f instanceof ParsedFunction) return ((ParsedFunction) f).asPolynomial();
+        return null;
+    }
+
+    /**
+     * The distinct real roots of p in [lo, hi], in increasing order. A polynomial that is
+     * identically zero has no isolated roots and gives none.
+     */
+    public static double[] realRoots(PolynomialFunction p, double lo, double hi) {
+        int n = p.getDegree();
+        if (n == 0 || !(hi >= lo)) return new double[0];
+
+        // Every real root lies within Cauchy's bound
+        double lead = p.coefficient(n), bound = 0;
+        for (int i = 0; i < n; i++) bound = Math.max(bound, Math.abs(p.coefficient(i) / lead));
+        bound = 1 + bound;
+        double a = Math.max(lo, -bound), b = Math.min(hi, bound);
+
+        List<Double> roots = new ArrayList<>();
+        if (lo >= -bound && p.evaluate(lo) == 0) roots.add(lo);
+        if (b >= a) {
+            double[][] chain = chain(p.getCoefficients());
+            isolate(p, chain, a, b, changes(chain, a), changes(chain, b), 0, roots);
+        }
+
+        double[] out = new double[roots.size()];
+        for (int i = 0; i < out.length; i++) out[i] = roots.get(i);
+        return out;
+    }
+
+    /**
+     * The roots of p strictly inside (lo, hi) across which p changes sign, i.e. those of
+     * odd multiplicity: the extrema of an antiderivative, or the inflections of a second one.
+     */
+    public static List<Double> signChanges(PolynomialFunction p, double lo, double hi) {
+        double[] roots = realRoots(p, lo, hi);
+        List<Double> out = new ArrayList<>();
+        for (int i = 0; i < roots.length; i++) {
+            double r = roots[i];
+            if (r <= lo || r >= hi) continue;
+            double left = 0.5 * ((i > 0 ? roots[i - 1] : lo) + r);
+            double right = 0.5 * (r + (i + 1 < roots.length ? roots[i + 1] : hi));
+            if (p.evaluate(left) * p.evaluate(right) < 0) out.add(r);
+        }
+        return out;
+    }
+
+    // Roots in (a, b], where va and vb are the sign changes of the chain at a and b
+    private static void isolate(PolynomialFunction p, double[][] chain, double a, double b, int va, int vb,
+                                int depth, List<Double> roots) {
+        int count = va - vb;
+        if (count <= 0) return;
+        double mid = 0.5 * (a + b);
+        if (count == 1 || depth >= MAX_DEPTH || mid <= a || mid >= b) {
+            roots.add(polish(p, chain, a, b, va));
+            return;
+        }
+        int vm = changes(chain, mid);
+        isolate(p, chain, a, mid, va, vm, depth + 1, roots);
+        isolate(p, chain, mid, b, vm, vb, depth + 1, roots);
+    }
+
+    // The single root in (a, b]
+    private static double polish(PolynomialFunction p, double[][] chain, double a, double b, int va) {
+        double pa = p.evaluate(a), pb = p.evaluate(b);
+        if (pb == 0) return b;
+        if (pa * pb < 0) {
+            Root root = RootRefiner.refine(p::evaluate, a, pa, b, pb);
+            if (!Double.isNaN(root.x)) return root.x;
+        }
+        for (int i = 0; i < MAX_DEPTH; i++) {
+            double mid = 0.5 * (a + b);
+            if (mid <= a || mid >= b) break;
+            if (changes(chain, mid) < va) b = mid;
+            else a = mid;
+        }
+        return 0.5 * (a + b);
+    }
+
+    // Sturm chain of c (constant first), trimming remainders to zero below rounding level
+    private static double[][] chain(double[] c) {
+        List<double[]> chain = new ArrayList<>();
+        chain.add(c);
+        double[] d = new double[c.length - 1];
+        for (int i = 1; i < c.length; i++) d[i - 1] = c[i] * i;
+        chain.add(d);
+        while (chain.get(chain.size() - 1).length > 1) {
+            double[] r = remainder(chain.get(chain.size() - 2), chain.get(chain.size() - 1));
+            if (r == null) break;
+            for (int i = 0; i < r.length; i++) r[i] = -r[i];
+            chain.add(r);
+        }
+        return chain.toArray(new double[0][]);
+    }
+
+    // u mod v with u, v constant first; null when the remainder vanishes
+    private static double[] remainder(double[] u, double[] v) {
+        double[] r = u.clone();
+        int dv = v.length - 1;
+        double scale = 0;
+        for (double x : u) scale = Math.max(scale, Math.abs(x));
+        for (int k = r.length - 1; k >= dv; k--) {
+            double q = r[k] / v[dv];
+            for (int j = 0; j <= dv; j++) r[k - dv + j] -= q * v[j];
+            r[k] = 0;
+        }
+        int n = dv - 1;
+        double tolerance = 1e-12 * scale;
+        while (n >= 0 && Math.abs(r[n]) <= tolerance) n--;
+        return n < 0 ? null : Arrays.copyOf(r, n + 1);
+    }
+
+    private static int changes(double[][] chain, double x) {
+        int changes = 0;
+        double last = 0;
+        for (double[] c : chain) {
+            double v = c[c.length - 1];
+            for (int i = c.length - 2; i >= 0; i--) v = v * x + c[i];
+            if (v == 0) continue;
+            if (last != 0 && (v > 0) != (last > 0)) changes++;
+            last = v;
+        }
+        return changes;
+    }
+}
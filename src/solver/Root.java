@@ -0,0 +1,22 @@
+package solver;
+
+/** A root found by {@link RootRefiner}, with the residual there and what it cost. */
+public final class Root {
+    public final double x;
+    public final double value;
+    public final int iterations;
+    public final boolean converged;
+
+    Root(double x, double value, int iterations, boolean converged) {
+        this.x = x;
+        this.value = value;
+        this.iterations = iterations;
+        this.converged = converged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Root[x=%.15g, value=%.3g, iterations=%d%s]", x, value, iterations,
+                converged ? "" : ", not converged");
+    }
+}
@@ -0,0 +1,126 @@
+package solver;
+
+import parser.Differentiator;
+import parser.Interval;
+import parser.IntervalEvaluator;
+import parser.Node;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Branch-and-prune root isolation for an expression tree g on [start, end]. Boxes whose
+ * interval enclosure of g excludes 0 are discarded, since they provably hold no root;
+ * boxes where the enclosure of g' excludes 0 hold at most one root, which Brent's
+ * method finds from the sign change at the ends. Everything else is bisected. Boxes
+ * that shrink to the width tolerance without being decided are merged into clusters
+ * and reported where |g| is smallest when it is close to 0, which is how tangent
+ * roots and roots of even multiplicity are caught.
+ */
+public class RootIsolator {
+    public static final double DEFAULT_WIDTH = 1e-9;
+    public static final int DEFAULT_MAX_BOXES = 100000;
+
+    // A cluster without a sign change counts as a tangent root when |g| there is this small
+    private static final double TANGENT_RESIDUAL = 1e-9;
+    private static final double JUMP_RATIO = 1e-3;
+    private static final double MULTIPLE_ROOT_SPREAD = 2e-8;
+
+    public static List<Root> isolate(Node g, DoubleUnaryOperator pointwise, double start, double end) {
+        return isolate(g, pointwise, start, end, DEFAULT_WIDTH, DEFAULT_MAX_BOXES);
+    }
+
+    /**
+     * All roots of g in [start, end] in increasing order, using pointwise to evaluate g at
+     * single points. Returns null when more than maxBoxes boxes would be needed, which
+     * happens when g vanishes on a whole interval or the enclosures are too loose.
+     */
+    public static List<Root> isolate(Node g, DoubleUnaryOperator pointwise, double start, double end,
+                                     double width, int maxBoxes) {
+        Node slope = Differentiator.differentiate(g);
+        List<Root> roots = new ArrayList<>();
+        Deque<double[]> boxes = new ArrayDeque<>();
+        boxes.push(new double[]{start, end});
+
+        double clusterStart = Double.NaN, clusterEnd = Double.NaN;
+        int processed = 0;
+        while (!boxes.isEmpty()) {
+            if (++processed > maxBoxes) return null;
+            double[] box = boxes.pop();
+            double lo = box[0], hi = box[1];
+
+            Interval range = IntervalEvaluator.evaluate(g, lo, hi);
+            if (!range.contains(0)) continue;
+
+            if (hi - lo <= width) {
+                // Boxes come off the stack left to right, so touching ones extend the cluster
+                if (clusterEnd == lo) {
+                    clusterEnd = hi;
+                } else {
+                    addCluster(roots, pointwise, clusterStart, clusterEnd);
+                    clusterStart = lo;
+                    clusterEnd = hi;
+                }
+                continue;
+            }
+
+            Interval derivative = IntervalEvaluator.evaluate(slope, lo, hi);
+            if (!derivative.isEmpty() && !derivative.contains(0)) {
+                double glo = pointwise.applyAsDouble(lo), ghi = pointwise.applyAsDouble(hi);
+                if (!Double.isNaN(glo) && !Double.isNaN(ghi)) {
+                    // A root on the shared end of two boxes belongs to the box it starts
+                    if (ghi == 0 && hi != end) continue;
+                    Root root = RootRefiner.refine(pointwise, lo, glo, hi, ghi);
+                    if (!Double.isNaN(root.x)) roots.add(root);
+                    continue;
+                }
+            }
+
+            double mid = 0.5 * (lo + hi);
+            if (mid <= lo || mid >= hi) continue;
+            boxes.push(new double[]{mid, hi});
+            boxes.push(new double[]{lo, mid});
+        }
+        addCluster(roots, pointwise, clusterStart, clusterEnd);
+
+        // Clusters are reported late, and rounding noise around a multiple root can split it
+        // into neighbouring clusters; a double root is only resolvable to about sqrt(eps)
+        roots.sort(Comparator.comparingDouble(r -> r.x));
+        List<Root> distinct = new ArrayList<>(roots.size());
+        for (Root root : roots) {
+            int last = distinct.size() - 1;
+            if (last < 0 || root.x - distinct.get(last).x > Math.max(4 * width, MULTIPLE_ROOT_SPREAD * (1 + Math.abs(root.x)))) distinct.add(root);
+            else if (Math.abs(root.value) < Math.abs(distinct.get(last).value)) distinct.set(last, root);
+        }
+        return distinct;
+    }
+
+    private static void addCluster(List<Root> roots, DoubleUnaryOperator g, double lo, double hi) {
+        if (Double.isNaN(lo)) return;
+        double glo = g.applyAsDouble(lo), ghi = g.applyAsDouble(hi);
+        if (glo == 0 || ghi == 0 || glo * ghi < 0) {
+            Root root = RootRefiner.refine(g, lo, glo, hi, ghi);
+            // A sign change across a pole or a jump does not shrink toward 0
+            if (!Double.isNaN(root.x) && Math.abs(root.value) <= Math.max(TANGENT_RESIDUAL,
+                    JUMP_RATIO * Math.max(Math.abs(glo), Math.abs(ghi))))
+                roots.add(root);
+            return;
+        }
+        double mid = 0.5 * (lo + hi);
+        double gmid = g.applyAsDouble(mid);
+        double x = mid, best = Math.abs(gmid);
+        if (Math.abs(glo) < best) {
+            x = lo;
+            best = Math.abs(glo);
+        }
+        if (Math.abs(ghi) < best) {
+            x = hi;
+            best = Math.abs(ghi);
+        }
+        if (best <= TANGENT_RESIDUAL) roots.add(new Root(x, g.applyAsDouble(x), 0, true));
+    }
+}
@@ -0,0 +1,106 @@
+package solver;
+
+import functions.Function;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Brent's method for a root of g inside a sign change [a, b]. It mixes inverse
+ * quadratic interpolation and secant steps with bisection as a fallback, so it keeps
+ * bisection's guarantee while usually converging superlinearly. Endpoint values the
+ * caller already has are passed in rather than evaluated again, and every iteration
+ * costs exactly one evaluation of g.
+ */
+public class RootRefiner {
+    public static final double DEFAULT_ABSOLUTE_TOLERANCE = 1e-12;
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 1e-12;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    private static final double EPS = Math.ulp(1.0);
+
+    /** Bound on |x - root| for a root converged with the default tolerances. */
+    static double precision(double x) {
+        return 4 * EPS * Math.abs(x) + Math.max(DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_RELATIVE_TOLERANCE * Math.abs(x));
+    }
+
+    public static Root refine(Function f, double a, double b) {
+        return refine(f::evaluate, a, f.evaluate(a), b, f.evaluate(b));
+    }
+
+    public static Root refine(DoubleUnaryOperator g, double a, double ga, double b, double gb) {
+        return refine(g, a, ga, b, gb, DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_RELATIVE_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Narrows [a, b], where ga = g(a) and gb = g(b) differ in sign, until the bracket is
+     * within the absolute tolerance or the relative tolerance times |x|, whichever is
+     * larger. Returns a NaN root when there is no sign change or g stops being defined.
+     */
+    public static Root refine(DoubleUnaryOperator g, double a, double ga, double b, double gb,
+                              double absoluteTolerance, double relativeTolerance, int maxIterations) {
+        if (ga == 0) return new Root(a, 0, 0, true);
+        if (gb == 0) return new Root(b, 0, 0, true);
+        if (Double.isNaN(ga) || Double.isNaN(gb) || (ga > 0) == (gb > 0)) return new Root(Double.NaN, Double.NaN, 0, false);
+
+        double c = a, gc = ga;
+        double e = b - a, d = e;
+        int iterations = 0;
+        while (true) {
+            if (Math.abs(gc) < Math.abs(gb)) {
+                a = b;
+                b = c;
+                c = a;
+                ga = gb;
+                gb = gc;
+                gc = ga;
+            }
+            double tol = 2 * EPS * Math.abs(b) + 0.5 * Math.max(absoluteTolerance, relativeTolerance * Math.abs(b));
+            double m = 0.5 * (c - b);
+            if (Math.abs(m) <= tol || gb == 0) return new Root(b, gb, iterations, true);
+            if (iterations >= maxIterations) return new Root(b, gb, iterations, false);
+
+            if (Math.abs(e) < tol || Math.abs(ga) <= Math.abs(gb)) {
+                e = m;
+                d = e;
+            } else {
+                double s = gb / ga, p, q;
+                if (a == c) {
+                    // Secant step
+                    p = 2 * m * s;
+                    q = 1 - s;
+                } else {
+                    // Inverse quadratic interpolation
+                    double r = gb / gc;
+                    q = ga / gc;
+                    p = s * (2 * m * q * (q - r) - (b - a) * (r - 1));
+                    q = (q - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) q = -q;
+                else p = -p;
+                s = e;
+                e = d;
+                if (2 * p < 3 * m * q - Math.abs(tol * q) && p < Math.abs(0.5 * s * q)) {
+                    d = p / q;
+                } else {
+                    e = m;
+                    d = e;
+                }
+            }
+
+            a = b;
+            ga = gb;
+            if (Math.abs(d) > tol) b += d;
+            else b += m > 0 ? tol : -tol;
+            gb = g.applyAsDouble(b);
+            iterations++;
+            if (Double.isNaN(gb)) return new Root(Double.NaN, Double.NaN, iterations, false);
+
+            if ((gb > 0 && gc > 0) || (gb <= 0 && gc <= 0)) {
+                c = a;
+                gc = ga;
+                e = b - a;
+                d = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package solver;
+
+import functions.DualFunction;
+import functions.Function;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Memoized samples of a function on the grid start + k * step, k in [0, count), shared by
+ * everything that scans the same function at the same resolution: the renderer's uniform
+ * pass, the extremum, inflection and intersection finders and fixed-step integration.
+ * Entries are keyed by function identity and grid, filled on first use and evicted least
+ * recently used first once the samples held exceed the memory budget. Returned arrays
+ * are shared and must not be modified.
+ */
+public class SampleStore {
+    // -Dplotter.sampleStoreBytes=N overrides the default budget of 32 MB
+    private static long budget = Math.max(0, Long.getLong("plotter.sampleStoreBytes", 32L << 20));
+    private static long used;
+    private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private SampleStore() {
+    }
+
+    /** f(start + k * step) for k in [0, count). */
+    public static double[] values(Function f, double start, double step, int count) {
+        return entry(f, start, step, count).values();
+    }
+
+    /** f'(start + k * step) for k in [0, count); the values are filled in the same pass. */
+    public static double[] slopes(DualFunction f, double start, double step, int count) {
+        return entry(f, start, step, count).slopes();
+    }
+
+    /** Whether values(f, start, step, count) would be answered without evaluating f. */
+    public static boolean hasValues(Function f, double start, double step, int count) {
+        Entry entry;
+        synchronized (SampleStore.class) {
+            entry = entries.get(new Key(f, start, step, count));
+        }
+        return entry != null && entry.hasValues();
+    }
+
+    /** Bytes of samples kept at most; 0 turns memoization off. */
+    public static synchronized void setBudget(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("budget must not be negative");
+        budget = bytes;
+        trim();
+    }
+
+    public static synchronized long getBudget() {
+        return budget;
+    }
+
+    /** Bytes of samples currently held. */
+    public static synchronized long getUsed() {
+        return used;
+    }
+
+    public static synchronized void clear() {
+        entries.clear();
+        used = 0;
+    }
+
+    private static synchronized Entry entry(Function f, double start, double step, int count) {
+        Key key = new Key(f, start, step, count);
+        return entries.computeIfAbsent(key, Entry::new);
+    }
+
+    // Counts bytes a filled entry now holds, unless it was evicted while filling
+    private static synchronized void grew(Entry entry, long bytes) {
+        if (entries.get(entry.key) != entry) return;
+        entry.bytes += bytes;
+        used += bytes;
+        trim();
+    }
+
+    private static void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (used > budget && it.hasNext()) {
+            used -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private static final class Key {
+        final Function f;
+        final double start, step;
+        final int count;
+
+        Key(Function f, double start, double step, int count) {
+            this.f = f;
+            this.start = start;
+            this.step = step;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return f == k.f && Double.compare(start, k.start) == 0 && Double.compare(step, k.step) == 0
+                    && count == k.count;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(f);
+            h = 31 * h + Double.hashCode(start);
+            h = 31 * h + Double.hashCode(step);
+            return 31 * h + count;
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        long bytes;  // guarded by SampleStore.class
+        private double[] values, slopes;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        synchronized boolean hasValues() {
+            return values != null;
+        }
+
+        synchronized double[] values() {
+            if (values == null) {
+                double[] v = new double[key.count];
+                fill(v, null);
+                values = v;
+                grew(this, 8L * key.count);
+            }
+            return values;
+        }
+
+        synchronized double[] slopes() {
+            if (slopes == null) {
+                double[] v = values == null ? new double[key.count] : null;
+                double[] d = new double[key.count];
+                fill(v, d);
+                slopes = d;
+                if (v != null) values = v;
+                grew(this, 8L * key.count * (v != null ? 2 : 1));
+            }
+            return slopes;
+        }
+
+        // One batch call per scanner chunk; values or slopes may be null when not wanted
+        private void fill(double[] values, double[] slopes) {
+            ParallelScanner.scan(key.start, key.step, key.count, 0, (xs, offset, lo, hi, none) -> {
+                double[] v = new double[xs.length];
+                if (slopes == null) {
+                    key.f.evaluate(xs, v, lo, hi);
+                } else {
+                    double[] d = new double[xs.length];
+                    ((DualFunction) key.f).evaluateDual(xs, v, d, lo, hi);
+                    System.arraycopy(d, lo, slopes, offset + lo, hi - lo);
+                }
+                if (values != null) System.arraycopy(v, lo, values, offset + lo, hi - lo);
+            });
+        }
+    }
+}
@@ -2,7 +2,9 @@ package ui;
 
 import functions.Function;
 import parser.FunctionParser;
-import solver.IntersectionFinder;
+import parser.FunctionParser.ParsedFunction;
+import solver.DerivativeSolver;
+import solver.SampleStore;
 import util.ColorUtil;
 import util.SVGExporter;
 import util.WorkspaceState;
@@ -13,7 +15,11 @@ import java.awt.event.ActionEvent;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class FunctionPlotterGUI extends JFrame {
     private ZoomablePlotPanel plotPanel;
@@ -22,6 +28,19 @@ public class FunctionPlotterGUI extends JFrame {
     private JTextField areaStartField, areaEndField;
     private JLabel clickedPointLabel;
     private JCheckBox extremaBox, inflectionBox;
+    private ParameterPanel parameterPanel;
+    private final List<Plotted> plotted = new ArrayList<>();
+
+    // A plotted function and its derivative curve, if shown
+    private static class Plotted {
+        Function function;
+        Function derivative;
+
+        Plotted(Function function, Function derivative) {
+            this.function = function;
+            this.derivative = derivative;
+        }
+    }
 
     public FunctionPlotterGUI() {
         super("Function Plotter");
@@ -66,8 +85,14 @@ public class FunctionPlotterGUI extends JFrame {
         row2.add(saveButton);
         row2.add(loadButton);
 
+        // THIRD ROW: a slider for every free parameter in the plotted expressions
+        parameterPanel = new ParameterPanel();
+        parameterPanel.setVisible(false);
+        parameterPanel.setChangeListener((name, value) -> updateParameter(name));
+
         inputPanel.add(row1);
         inputPanel.add(row2);
+        inputPanel.add(parameterPanel);
 
         add(inputPanel, BorderLayout.NORTH);
 
@@ -84,63 +109,50 @@ public class FunctionPlotterGUI extends JFrame {
         // Plot Button Logic
         plotButton.addActionListener((ActionEvent e) -> {
             plotPanel.clearAll();
+            plotted.clear();
+            // The previous functions are gone, so are their samples
+            SampleStore.clear();
             ColorUtil.reset();
 
             String inputText = functionInputField.getText();
-            if (inputText.isEmpty()) return;
+            if (inputText.isEmpty()) {
+                parameterPanel.showParameters(new ArrayList<>(), ParsedFunction.DEFAULT_PARAMETER);
+                return;
+            }
 
             String[] expressions = inputText.split(",");
             List<Function> functions = new ArrayList<>();
+            Set<String> parameters = new LinkedHashSet<>();
 
             for (String expr : expressions) {
                 expr = expr.trim();
                 if (!expr.isEmpty()) {
                     try {
                         Function function = FunctionParser.parse(expr);
-                        function.setColor(ColorUtil.getNextColor());
+                        if (function instanceof ParsedFunction) {
+                            ParsedFunction parsed = (ParsedFunction) function;
+                            if (!parsed.isReadable()) throw new IllegalArgumentException("Failed to parse: " + expr);
+                            parameters.addAll(parsed.getParameters());
+                            function = parsed.withParameters(parameterPanel.getValues());
+                        }
                         functions.add(function);
-                        plotPanel.addFunction(function);
+                        plotPanel.addFunction(function, ColorUtil.getNextColor());
 
+                        Function derivative = null;
                         if (derivativeBox.isSelected()) {
-                            Function derivative = new Function() {
-                                private Color color;
-                                @Override
-                                public double evaluate(double x) {
-                                    return solver.DerivativeSolver.derivative(function, x);
-                                }
-                                @Override
-                                public String getExpression() {
-                                    return "f'(x)";
-                                }
-                                @Override
-                                public void setColor(Color c) {
-                                    this.color = c;
-                                }
-                                @Override
-                                public Color getColor() {
-                                    return color;
-                                }
-                            };
-                            derivative.setColor(ColorUtil.getNextColor());
-                            plotPanel.addFunction(derivative);
+                            derivative = DerivativeSolver.derivativeOf(function);
+                            plotPanel.addFunction(derivative, ColorUtil.getNextColor());
                         }
-
-                        plotPanel.markExtremaAndInflection(function, -100, 100,
-                                extremaBox.isSelected(), inflectionBox.isSelected());
+                        plotted.add(new Plotted(function, derivative));
                     } catch (Exception ex) {
                         JOptionPane.showMessageDialog(this, "Failed to parse: " + expr);
                     }
                 }
             }
+            parameterPanel.showParameters(parameters, ParsedFunction.DEFAULT_PARAMETER);
 
-            for (int i = 0; i < functions.size(); i++) {
-                for (int j = i + 1; j < functions.size(); j++) {
-                    plotPanel.markIntersectionPoints(
-                            IntersectionFinder.findIntersections(functions.get(i), functions.get(j), -100, 100, 0.01)
-                    );
-                }
-            }
-
+            // Features are found in the background for whatever part of the plane is in view
+            plotPanel.analyze(functions, extremaBox.isSelected(), inflectionBox.isSelected());
             plotPanel.repaint();
         });
 
@@ -211,6 +223,24 @@ public class FunctionPlotterGUI extends JFrame {
         setVisible(true);
     }
 
+    // Re-plots only the functions that use the parameter; the rest keep their samples and analysis
+    private void updateParameter(String name) {
+        Map<Function, Function> replacements = new IdentityHashMap<>();
+        for (Plotted p : plotted) {
+            if (!(p.function instanceof ParsedFunction) || !((ParsedFunction) p.function).dependsOn(name)) continue;
+            ParsedFunction next = ((ParsedFunction) p.function).withParameters(parameterPanel.getValues());
+            if (next == p.function) continue;
+            replacements.put(p.function, next);
+            p.function = next;
+            if (p.derivative != null) {
+                Function derivative = DerivativeSolver.derivativeOf(next);
+                replacements.put(p.derivative, derivative);
+                p.derivative = derivative;
+            }
+        }
+        if (!replacements.isEmpty()) plotPanel.replaceFunctions(replacements);
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(FunctionPlotterGUI::new);
     }
@@ -0,0 +1,69 @@
+package ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * One slider per free parameter of the plotted expressions. Values are kept across
+ * plots, so a parameter that comes back keeps the value it had; every slider movement
+ * is reported to the listener, including while dragging.
+ */
+public class ParameterPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int RANGE = 10, STEPS_PER_UNIT = 20;
+
+    private final Map<String, Double> values = new LinkedHashMap<>();
+    private BiConsumer<String, Double> listener;
+
+    public ParameterPanel() {
+        super(new FlowLayout(FlowLayout.LEFT));
+    }
+
+    public void setChangeListener(BiConsumer<String, Double> listener) {
+        this.listener = listener;
+    }
+
+    /** Current values of every parameter ever shown, by name. */
+    public Map<String, Double> getValues() {
+        return values;
+    }
+
+    /** Shows sliders for exactly these parameters; new ones start at defaultValue. */
+    public void showParameters(Collection<String> names, double defaultValue) {
+        removeAll();
+        for (String name : names) {
+            values.putIfAbsent(name, defaultValue);
+            add(slider(name));
+        }
+        setVisible(!names.isEmpty());
+        revalidate();
+        repaint();
+    }
+
+    private JComponent slider(String name) {
+        JLabel label = new JLabel();
+        JSlider slider = new JSlider(-RANGE * STEPS_PER_UNIT, RANGE * STEPS_PER_UNIT,
+                (int) Math.round(Math.max(-RANGE, Math.min(RANGE, values.get(name))) * STEPS_PER_UNIT));
+        slider.setPreferredSize(new Dimension(160, slider.getPreferredSize().height));
+        label.setText(format(name, values.get(name)));
+        slider.addChangeListener(e -> {
+            double v = slider.getValue() / (double) STEPS_PER_UNIT;
+            if (values.get(name) == v) return;
+            values.put(name, v);
+            label.setText(format(name, v));
+            if (listener != null) listener.accept(name, v);
+        });
+        JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
+        row.add(label);
+        row.add(slider);
+        return row;
+    }
+
+    private static String format(String name, double v) {
+        return String.format("%s = %.2f", name, v);
+    }
+}
@@ -1,8 +1,17 @@
 package ui;
 
 import functions.Function;
-import solver.ExtremaFinder;
-import solver.InflectionFinder;
+import render.AllocationMeter;
+import render.PlotRenderer;
+import render.PointIndex;
+import render.RenderPipeline;
+import render.RenderStats;
+import render.Scene;
+import render.TileCache;
+import render.Viewport;
+import solver.Extremum;
+import solver.IncrementalAnalysis;
+import solver.Intersection;
 
 import javax.swing.*;
 import java.awt.*;
@@ -10,17 +19,21 @@ import java.awt.event.*;
 import java.awt.geom.*;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
 public class ZoomablePlotPanel extends JPanel {
     private List<Function> functions = new ArrayList<>();
+    private List<Color> colors = new ArrayList<>();
     private List<Point.Double> intersectionPoints = new ArrayList<>();
     private List<Point2D.Double> extremaPoints = new ArrayList<>();
     private List<Point2D.Double> inflectionPoints = new ArrayList<>();
-    private List<Point2D.Double> curvePoints = new ArrayList<>(); // NEW
 
-    private Map<String, String> pointTypes = new HashMap<>();
+    private List<String> extremaTypes = new ArrayList<>();
     private static final int CLICK_TOLERANCE = 15;
+    private static final int MAX_INDEXED_CURVE_POINTS = 500_000;
 
     private double scale = 40;
     private double offsetX = 0;
@@ -30,67 +43,129 @@ public class ZoomablePlotPanel extends JPanel {
     private double areaX1 = Double.NaN, areaX2 = Double.NaN;
     private BiConsumer<Double, Double> clickListener;
 
+    private final RenderPipeline pipeline = new RenderPipeline(this::repaint);
+    // Tiles follow sceneVersion; marked points are painted over them and follow annotationVersion
+    private long sceneVersion = 0;
+    private long annotationVersion = 0;
+    private long snapshotAnnotationVersion = -1;
+    private Viewport requestedViewport;
+    private long requestedVersion = -1;
+    private Scene scene;
+
+    private volatile IncrementalAnalysis analysis;
+    private final AtomicReference<double[]> pendingAnalysis = new AtomicReference<>();
+    private final ExecutorService analysisWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "plot-analysis");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Hit-testing indexes; annotations are re-indexed when they change, curve samples tile by tile
+    private final PointIndex annotationIndex = new PointIndex(CLICK_TOLERANCE);
+    private final List<String> annotationTypes = new ArrayList<>();
+    private final List<Color> annotationColors = new ArrayList<>();
+    private int[] visibleAnnotations = new int[256];
+    private long annotationIndexVersion = -1;
+    private double annotationIndexScale = Double.NaN;
+    private final PointIndex curveIndex = new PointIndex(CLICK_TOLERANCE);
+    private final Set<TileCache.Key> indexedTiles = new HashSet<>();
+    private long curveIndexVersion = -1;
+    private double curveIndexScale = Double.NaN;
+
     public ZoomablePlotPanel() {
         setBackground(Color.WHITE);
         enablePanAndZoom();
         enableClickDetection();
     }
 
-    public void addFunction(Function f) {
+    public void addFunction(Function f, Color color) {
         functions.add(f);
+        colors.add(color);
+        sceneVersion++;
     }
 
-    public void markIntersectionPoints(List<Point.Double> points) {
-        intersectionPoints.clear();
-        intersectionPoints.addAll(points);
-        for (Point.Double p : points) {
-            String key = String.format("%.6f,%.6f", p.x, p.y);
-            pointTypes.put(key, "Intersection");
-        }
+    /**
+     * Marks extrema, inflections and intersections of the given functions. They are
+     * found in the background for the visible range plus a margin, and extended as the
+     * view moves; ranges analysed once are never analysed again.
+     */
+    public void analyze(List<Function> fs, boolean markExtrema, boolean markInflection) {
+        analysis = new IncrementalAnalysis(fs, markExtrema, markInflection, true);
+        showAnalysis(analysis);
+        requestAnalysis();
     }
 
-    public void markExtremaAndInflection(Function f, double xStart, double xEnd, boolean markExtrema, boolean markInflection) {
-        if (markExtrema) {
-            extremaPoints.clear();
-            List<Double> extrema = ExtremaFinder.findExtrema(f, xStart, xEnd, 0.1);
-            for (double x : extrema) {
-                double y = f.evaluate(x);
-                Point2D.Double point = new Point2D.Double(x, y);
-                extremaPoints.add(point);
-
-                double h = 0.001;
-                double leftVal = f.evaluate(x - h);
-                double rightVal = f.evaluate(x + h);
-                String type = (leftVal < y && rightVal < y) ? "Maximum" : "Minimum";
-
-                String key = String.format("%.6f,%.6f", x, y);
-                pointTypes.put(key, type);
-            }
+    /**
+     * Swaps plotted functions for new versions of themselves, e.g. after a parameter
+     * change. Samples and analysis results of the functions left alone are kept; only
+     * the replacements are sampled and analysed again. Replacements keep the colour of
+     * the function they replace.
+     */
+    public void replaceFunctions(Map<Function, ? extends Function> replacements) {
+        functions.replaceAll(f -> replacements.containsKey(f) ? replacements.get(f) : f);
+        IncrementalAnalysis current = analysis;
+        if (current != null) {
+            analysis = current.withReplaced(replacements);
+            showAnalysis(analysis);
+            requestAnalysis();
         }
+        sceneVersion++;
+        repaint();
+    }
 
-        if (markInflection) {
-            inflectionPoints.clear();
-            List<Double> inflections = InflectionFinder.findInflectionPoints(f, xStart, xEnd, 0.1);
-            for (double x : inflections) {
-                double y = f.evaluate(x);
-                Point2D.Double point = new Point2D.Double(x, y);
-                inflectionPoints.add(point);
+    // The visible x range plus half a view on either side, so short pans find results ready
+    private void requestAnalysis() {
+        IncrementalAnalysis current = analysis;
+        if (current == null || getWidth() <= 0) return;
+        double half = getWidth() / 2.0 / scale;
+        double lo = offsetX - 2 * half, hi = offsetX + 2 * half;
+        if (current.covers(lo, hi)) return;
+        if (pendingAnalysis.getAndSet(new double[]{lo, hi}) == null) analysisWorker.execute(this::runAnalysis);
+    }
 
-                String key = String.format("%.6f,%.6f", x, y);
-                pointTypes.put(key, "Inflection");
+    // Runs on the analysis thread; requests made meanwhile collapse into the latest one
+    private void runAnalysis() {
+        double[] range;
+        while ((range = pendingAnalysis.getAndSet(null)) != null) {
+            IncrementalAnalysis current = analysis;
+            if (current != null && current.extend(range[0], range[1])) {
+                SwingUtilities.invokeLater(() -> showAnalysis(current));
             }
         }
     }
 
+    private void showAnalysis(IncrementalAnalysis current) {
+        if (current != analysis) return;
+        intersectionPoints.clear();
+        for (Intersection p : current.getIntersections()) intersectionPoints.add(new Point2D.Double(p.x, p.y));
+        extremaPoints.clear();
+        extremaTypes.clear();
+        for (Extremum e : current.getExtrema()) {
+            extremaPoints.add(new Point2D.Double(e.x, e.y));
+            extremaTypes.add(e.type.label);
+        }
+        inflectionPoints.clear();
+        for (solver.Point p : current.getInflections()) inflectionPoints.add(new Point2D.Double(p.x, p.y));
+        annotationVersion++;
+        repaint();
+    }
+
     public void clearAll() {
+        analysis = null;
         functions.clear();
+        colors.clear();
         intersectionPoints.clear();
         extremaPoints.clear();
         inflectionPoints.clear();
-        curvePoints.clear();
-        pointTypes.clear();
+        extremaTypes.clear();
         areaX1 = Double.NaN;
         areaX2 = Double.NaN;
+        sceneVersion++;
+        annotationVersion++;
+    }
+
+    public TileCache getTileCache() {
+        return pipeline.getTileCache();
     }
 
     public void setClickListener(BiConsumer<Double, Double> listener) {
@@ -100,6 +175,7 @@ public class ZoomablePlotPanel extends JPanel {
     public void shadeAndCalculateArea(double x1, double x2) {
         areaX1 = x1;
         areaX2 = x2;
+        sceneVersion++;
         repaint();
     }
 
@@ -108,7 +184,7 @@ public class ZoomablePlotPanel extends JPanel {
             double delta = e.getPreciseWheelRotation();
             scale *= (1 - delta * 0.1);
             scale = Math.max(5, Math.min(300, scale));
-            repaint();
+            viewChanged();
         });
 
         MouseAdapter adapter = new MouseAdapter() {
@@ -131,7 +207,7 @@ public class ZoomablePlotPanel extends JPanel {
                     offsetX -= (current.x - lastMouse.x) / scale;
                     offsetY += (current.y - lastMouse.y) / scale;
                     lastMouse = current;
-                    repaint();
+                    viewChanged();
                 }
             }
 
@@ -150,12 +226,10 @@ public class ZoomablePlotPanel extends JPanel {
     private void enableClickDetection() {
         addMouseMotionListener(new MouseAdapter() {
             public void mouseMoved(MouseEvent e) {
-                Point2D.Double hovered = findClickedPoint(e.getPoint());
+                Hit hovered = findClickedPoint(e.getPoint());
                 if (hovered != null) {
                     setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-                    String type = getPointType(hovered);
-                    if (type == null) type = "Curve";
-                    setToolTipText(type + " point: (" +
+                    setToolTipText(hovered.type + " point: (" +
                             String.format("%.4f", hovered.x) + ", " +
                             String.format("%.4f", hovered.y) + ")");
                 } else {
@@ -167,165 +241,170 @@ public class ZoomablePlotPanel extends JPanel {
     }
 
     private void handleClick(MouseEvent e) {
-        Point2D.Double clicked = findClickedPoint(e.getPoint());
+        Hit clicked = findClickedPoint(e.getPoint());
         if (clicked != null && clickListener != null) {
             clickListener.accept(clicked.x, clicked.y);
         }
     }
 
-    private Point2D.Double findClickedPoint(Point mousePoint) {
-        for (Point.Double p : intersectionPoints) {
-            if (mousePoint.distance(toScreen(p.x, p.y)) <= CLICK_TOLERANCE)
-                return new Point2D.Double(p.x, p.y);
-        }
+    private static class Hit {
+        final double x, y;
+        final String type;
 
-        for (Point2D.Double p : extremaPoints) {
-            if (mousePoint.distance(toScreen(p.x, p.y)) <= CLICK_TOLERANCE)
-                return p;
+        Hit(double x, double y, String type) {
+            this.x = x;
+            this.y = y;
+            this.type = type;
         }
+    }
 
-        for (Point2D.Double p : inflectionPoints) {
-            if (mousePoint.distance(toScreen(p.x, p.y)) <= CLICK_TOLERANCE)
-                return p;
-        }
+    // Annotated points win over plain curve samples, as they are drawn on top
+    private Hit findClickedPoint(Point mousePoint) {
+        double x = offsetX + (mousePoint.x - getWidth() / 2) / scale;
+        double y = offsetY - (mousePoint.y - getHeight() / 2) / scale;
+        double radius = CLICK_TOLERANCE / scale;
 
-        for (Point2D.Double p : curvePoints) {
-            if (mousePoint.distance(toScreen(p.x, p.y)) <= CLICK_TOLERANCE)
-                return p;
-        }
+        syncAnnotationIndex();
+        int i = annotationIndex.nearest(x, y, radius);
+        if (i >= 0) return new Hit(annotationIndex.x(i), annotationIndex.y(i), annotationTypes.get(annotationIndex.tag(i)));
 
+        syncCurveIndex();
+        i = curveIndex.nearest(x, y, radius);
+        if (i >= 0) return new Hit(curveIndex.x(i), curveIndex.y(i), "Curve");
         return null;
     }
 
-    private String getPointType(Point2D.Double point) {
-        String key = String.format("%.6f,%.6f", point.x, point.y);
-        return pointTypes.getOrDefault(key, "Curve");
+    private void syncAnnotationIndex() {
+        if (annotationIndexVersion == annotationVersion && annotationIndexScale == scale) return;
+        annotationIndex.reset(scale);
+        annotationTypes.clear();
+        annotationColors.clear();
+        for (Point.Double p : intersectionPoints) addAnnotation(p, "Intersection", PlotRenderer.INTERSECTION_COLOR);
+        for (int i = 0; i < extremaPoints.size(); i++) {
+            addAnnotation(extremaPoints.get(i), extremaTypes.get(i), PlotRenderer.EXTREMUM_COLOR);
+        }
+        for (Point2D.Double p : inflectionPoints) addAnnotation(p, "Inflection", PlotRenderer.INFLECTION_COLOR);
+        annotationIndexVersion = annotationVersion;
+        annotationIndexScale = scale;
     }
 
-    private Point toScreen(double x, double y) {
-        int cx = getWidth() / 2;
-        int cy = getHeight() / 2;
-        int sx = (int) (cx + (x - offsetX) * scale);
-        int sy = (int) (cy - (y - offsetY) * scale);
-        return new Point(sx, sy);
+    private void addAnnotation(Point2D.Double p, String type, Color color) {
+        if (annotationIndex.add(p.x, p.y, annotationTypes.size()) >= 0) {
+            annotationTypes.add(type);
+            annotationColors.add(color);
+        }
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        curvePoints.clear();
-
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        int w = getWidth();
-        int h = getHeight();
-        int centerX = w / 2;
-        int centerY = h / 2;
-
-        double minX = -centerX / scale + offsetX;
-        double maxX = centerX / scale + offsetX;
-        double minY = -centerY / scale + offsetY;
-        double maxY = centerY / scale + offsetY;
-
-        // Grid
-        g2.setColor(Color.LIGHT_GRAY);
-        for (int i = (int) Math.floor(minX); i <= maxX; i++) {
-            int x = (int) (centerX + (i - offsetX) * scale);
-            g2.drawLine(x, 0, x, h);
+    // Only the visible markers are drawn, in the order they were indexed so overlaps stack as before
+    private void paintAnnotations(Graphics2D g2) {
+        syncAnnotationIndex();
+        Viewport vp = currentViewport();
+        double margin = PlotRenderer.POINT_RADIUS / scale;
+        double minX = vp.minX() - margin, maxX = vp.maxX() + margin;
+        double minY = vp.minY() - margin, maxY = vp.maxY() + margin;
+        int count = annotationIndex.within(minX, minY, maxX, maxY, visibleAnnotations);
+        if (count > visibleAnnotations.length) {
+            visibleAnnotations = new int[Integer.highestOneBit(count) << 1];
+            count = annotationIndex.within(minX, minY, maxX, maxY, visibleAnnotations);
         }
-        for (int i = (int) Math.floor(minY); i <= maxY; i++) {
-            int y = (int) (centerY - (i - offsetY) * scale);
-            g2.drawLine(0, y, w, y);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int j = 0; j < count; j++) {
+            int i = visibleAnnotations[j];
+            g2.setColor(annotationColors.get(annotationIndex.tag(i)));
+            PlotRenderer.paintPoint(g2, vp, annotationIndex.x(i), annotationIndex.y(i));
         }
+    }
 
-        // Axes
-        g2.setColor(Color.BLACK);
-        int axisX = (int) (centerX - offsetX * scale);
-        int axisY = (int) (centerY + offsetY * scale);
-        g2.setStroke(new BasicStroke(2));
-        g2.drawLine(0, axisY, w, axisY);
-        g2.drawLine(axisX, 0, axisX, h);
-
-        // Axis labels
-        g2.setFont(new Font("Arial", Font.PLAIN, 10));
-        g2.setColor(Color.DARK_GRAY);
-        for (int i = (int) Math.floor(minX); i <= maxX; i++) {
-            int x = (int) (centerX + (i - offsetX) * scale);
-            g2.drawString(Integer.toString(i), x + 2, axisY + 12);
+    // Adds the curve samples of refined tiles not seen yet; starts over when the scale or scene changes
+    private void syncCurveIndex() {
+        RenderPipeline.Frame frame = pipeline.getLatestFrame();
+        if (frame == null || !frame.refined) return;
+        if (frame.sceneVersion != curveIndexVersion || frame.viewport.scale != curveIndexScale
+                || curveIndex.size() > MAX_INDEXED_CURVE_POINTS) {
+            curveIndex.reset(frame.viewport.scale);
+            indexedTiles.clear();
+            curveIndexVersion = frame.sceneVersion;
+            curveIndexScale = frame.viewport.scale;
         }
-        for (int i = (int) Math.floor(minY); i <= maxY; i++) {
-            int y = (int) (centerY - (i - offsetY) * scale);
-            g2.drawString(Integer.toString(i), axisX + 5, y - 3);
+        for (int t = 0; t < frame.tiles.size(); t++) {
+            if (!indexedTiles.add(frame.tileKeys.get(t))) continue;
+            TileCache.Tile tile = frame.tiles.get(t);
+            for (int i = 0; i < tile.curveXs.length; i++) {
+                curveIndex.add(tile.curveXs[i], tile.curveYs[i], 0);
+            }
         }
+    }
 
-        // Function curves and sampled points
-        for (Function f : functions) {
-            g2.setColor(f.getColor());
-            g2.setStroke(new BasicStroke(2));
-            Path2D path = new Path2D.Double();
-            boolean first = true;
-            for (double x = minX; x <= maxX; x += 0.01) {
-                double y = f.evaluate(x);
-                if (Double.isNaN(y) || Double.isInfinite(y)) continue;
-                Point screen = toScreen(x, y);
-                if (first) {
-                    path.moveTo(screen.x, screen.y);
-                    first = false;
-                } else {
-                    path.lineTo(screen.x, screen.y);
-                }
-                curvePoints.add(new Point2D.Double(x, y)); // Store curve points
-            }
-            g2.draw(path);
+    private Viewport currentViewport() {
+        return new Viewport(getWidth(), getHeight(), scale, offsetX, offsetY);
+    }
+
+    // Rebuilt only when the scene changes, so panning reuses the same snapshot
+    private Scene snapshot() {
+        if (scene == null || scene.version != sceneVersion || snapshotAnnotationVersion != annotationVersion) {
+            scene = new Scene(sceneVersion, functions, colors, intersectionPoints, extremaPoints, inflectionPoints, areaX1, areaX2);
+            snapshotAnnotationVersion = annotationVersion;
         }
+        return scene;
+    }
 
-        // Area shading
-        if (!Double.isNaN(areaX1) && !Double.isNaN(areaX2) && functions.size() >= 1) {
-            Function f = functions.get(0);
-            g2.setColor(new Color(0, 0, 255, 50));
-
-            double area = 0;
-            double step = 0.01;
-            for (double x = areaX1; x < areaX2; x += step) {
-                double y1 = f.evaluate(x);
-                double y2 = f.evaluate(x + step);
-                double avg = (y1 + y2) / 2;
-                area += avg * step;
-
-                int sx1 = (int) (centerX + (x - offsetX) * scale);
-                int sx2 = (int) (centerX + (x + step - offsetX) * scale);
-                int sy1 = (int) (centerY - (y1 - offsetY) * scale);
-                int sy2 = (int) (centerY - (y2 - offsetY) * scale);
-                int baseY = (int) (centerY - (0 - offsetY) * scale);
-
-                Polygon trapezoid = new Polygon();
-                trapezoid.addPoint(sx1, baseY);
-                trapezoid.addPoint(sx1, sy1);
-                trapezoid.addPoint(sx2, sy2);
-                trapezoid.addPoint(sx2, baseY);
-                g2.fill(trapezoid);
-            }
+    // Cancels whatever is being rendered for the old view right away instead of waiting for the next paint
+    private void viewChanged() {
+        requestFrame();
+        requestAnalysis();
+        repaint();
+    }
+
+    private void requestFrame() {
+        Viewport vp = requestedViewport;
+        if (vp != null && sceneVersion == requestedVersion && vp.width == getWidth() && vp.height == getHeight()
+                && vp.scale == scale && vp.offsetX == offsetX && vp.offsetY == offsetY) return;
+        requestedViewport = currentViewport();
+        requestedVersion = sceneVersion;
+        pipeline.request(requestedViewport, snapshot());
+    }
+
+    public RenderStats getRenderStats() {
+        return pipeline.getStats();
+    }
 
-            g2.setColor(Color.BLUE);
-            g2.setFont(new Font("Arial", Font.BOLD, 14));
-            int textX = (int) (centerX + ((areaX1 + areaX2) / 2 - offsetX) * scale);
-            int textY = (int) (centerY - (f.evaluate((areaX1 + areaX2) / 2) - offsetY) * scale) - 10;
-            g2.drawString(String.format("Area ≈ %.4f", area), textX, textY);
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+
+        // Printing (SVG export) wants vector output, so it bypasses the raster pipeline
+        if (isPaintingForPrint()) {
+            PlotRenderer.paintScene(g2, currentViewport(), snapshot());
+            return;
         }
 
-        // Highlight known points
-        drawPoints(g2, intersectionPoints, centerX, centerY, Color.RED);
-        drawPoints(g2, extremaPoints, centerX, centerY, Color.MAGENTA);
-        drawPoints(g2, inflectionPoints, centerX, centerY, Color.ORANGE);
+        long before = AllocationMeter.allocatedBytes();
+        requestFrame();
+        requestAnalysis();
+        RenderPipeline.Frame frame = pipeline.getLatestFrame();
+        if (frame != null) drawFrame(g2, frame);
+        paintAnnotations(g2);
+        pipeline.getStats().recordPaint(AllocationMeter.allocatedBytes() - before);
     }
 
-    private void drawPoints(Graphics2D g2, List<? extends Point2D> points, int cx, int cy, Color color) {
-        g2.setColor(color);
-        for (Point2D p : points) {
-            int sx = (int) (cx + (p.getX() - offsetX) * scale);
-            int sy = (int) (cy - (p.getY() - offsetY) * scale);
-            g2.fill(new Ellipse2D.Double(sx - 4, sy - 4, 8, 8));
+    // Frames are drawn at the nearest zoom level and stretched to the current scale; until
+    // the new frame is ready, the last one is shown moved and scaled to the current view
+    private void drawFrame(Graphics2D g2, RenderPipeline.Frame frame) {
+        Viewport from = frame.viewport;
+        double k = scale / from.scale;
+        double tx = getWidth() / 2 + (from.offsetX - offsetX) * scale - k * from.centerX();
+        double ty = getHeight() / 2 - (from.offsetY - offsetY) * scale - k * from.centerY();
+        double size = k * RenderPipeline.TILE_SIZE;
+        if (k != 1) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        for (int i = 0; i < frame.tiles.size(); i++) {
+            double x = k * frame.tileX[i] + tx;
+            double y = k * frame.tileY[i] + ty;
+            int x0 = (int) Math.round(x), y0 = (int) Math.round(y);
+            int x1 = (int) Math.round(x + size), y1 = (int) Math.round(y + size);
+            g2.drawImage(frame.tiles.get(i).image, x0, y0, x1 - x0, y1 - y0, null);
         }
     }
 }